@@ -0,0 +1,245 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmark of the adaptive row state: the columnar {@link RowBitmap} layout
+ * against the previous layout, with one object and one byte[] per row.<br>
+ * The include benchmarks check every row against all the filters; the
+ * allExcept benchmarks find, for each filter, the rows passing all the other
+ * filters, as the adaptive choices do.<br>
+ * The build benchmarks create the row state; run them with -prof gc, the
+ * reported gc.alloc.rate.norm is the memory used by each layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RowBitmapBenchmark {
+
+    @Param({ "100000", "1000000" })
+    int rows;
+
+    @Param({ "12" })
+    int filters;
+
+    /** Percentage of rows failing each filter. */
+    @Param({ "5" })
+    int failing;
+
+    boolean verdicts[][];
+    ArrayList<RowInfo> perRow;
+    RowBitmap columns[];
+    RowBitmap passing;
+
+    @Setup(Level.Trial) public void setUp() {
+        Random random = new Random(0);
+        verdicts = new boolean[filters][rows];
+        for (int f = 0; f < filters; f++) {
+            for (int r = 0; r < rows; r++) {
+                verdicts[f][r] = random.nextInt(100) >= failing;
+            }
+        }
+
+        perRow = buildPerRow();
+        columns = buildColumns();
+        passing = buildPassing(columns);
+    }
+
+    @Benchmark public ArrayList<RowInfo> buildPerRow() {
+        ArrayList<RowInfo> ret = new ArrayList<RowInfo>(rows);
+        for (int r = 0; r < rows; r++) {
+            RowInfo info = new RowInfo(filters);
+            for (int f = 0; f < filters; f++) {
+                info.set(f, verdicts[f][r]);
+            }
+
+            ret.add(info);
+        }
+
+        return ret;
+    }
+
+    @Benchmark public Object buildBitmap() {
+        RowBitmap built[] = buildColumns();
+
+        return new Object[] { built, buildPassing(built) };
+    }
+
+    @Benchmark public int includePerRow() {
+        int ret = 0;
+        for (RowInfo info : perRow) {
+            if (info.is()) {
+                ret++;
+            }
+        }
+
+        return ret;
+    }
+
+    @Benchmark public int includeBitmap() {
+        int ret = 0;
+        for (int r = passing.nextSetBit(0); r >= 0;
+                r = passing.nextSetBit(r + 1)) {
+            ret++;
+        }
+
+        return ret;
+    }
+
+    @Benchmark public int allExceptPerRow() {
+        int ret = 0;
+        for (RowInfo info : perRow) {
+            for (int f = 0; f < filters; f++) {
+                if (info.isExcept(f)) {
+                    ret++;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    @Benchmark public int allExceptBitmap() {
+        int ret = 0;
+        long prefix[] = new long[filters + 1];
+        long suffix[] = new long[filters + 1];
+        int words = passing.getWordCount();
+        for (int w = 0; w < words; w++) {
+            prefix[0] = -1L;
+            suffix[filters] = -1L;
+            for (int f = 0; f < filters; f++) {
+                prefix[f + 1] = prefix[f] & columns[f].getWord(w);
+            }
+
+            for (int f = filters - 1; f >= 0; f--) {
+                suffix[f] = suffix[f + 1] & columns[f].getWord(w);
+            }
+
+            for (int f = 0; f < filters; f++) {
+                ret += Long.bitCount(prefix[f] & suffix[f + 1]);
+            }
+        }
+
+        return ret;
+    }
+
+    RowBitmap[] buildColumns() {
+        RowBitmap ret[] = new RowBitmap[filters];
+        for (int f = 0; f < filters; f++) {
+            ret[f] = new RowBitmap(rows, true);
+            for (int r = 0; r < rows; r++) {
+                if (!verdicts[f][r]) {
+                    ret[f].set(r, false);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    RowBitmap buildPassing(RowBitmap built[]) {
+        RowBitmap ret = new RowBitmap(rows, true);
+        for (int w = ret.getWordCount() - 1; w >= 0; w--) {
+            long word = -1L;
+            for (RowBitmap column : built) {
+                word &= column.getWord(w);
+            }
+
+            ret.setWord(w, word);
+        }
+
+        return ret;
+    }
+
+    /** The previous row state: a bit per filter, on a byte[] per row. */
+    static class RowInfo {
+        static final byte SET = (byte) 255;
+        byte info[];
+
+        RowInfo(int columns) {
+            int length = 1 + (columns >> 3);
+            info = new byte[length];
+            while (length-- > 0) {
+                info[length] = SET;
+            }
+        }
+
+        boolean is() {
+            int length = info.length;
+            while (length-- > 0) {
+                if (info[length] != SET) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        boolean set(int column, boolean set) {
+            int col = column >> 3;
+            int bit = 1 << (column & 7);
+            byte now = info[col];
+            if (set) {
+                info[col] |= bit;
+            } else {
+                info[col] &= (SET ^ bit);
+            }
+
+            return now != info[col];
+        }
+
+        boolean isExcept(int column) {
+            boolean now = 0 != (info[column >> 3] & (1 << (column & 7)));
+            set(column, true);
+
+            boolean ret = is();
+            set(column, now);
+
+            return ret;
+        }
+    }
+}
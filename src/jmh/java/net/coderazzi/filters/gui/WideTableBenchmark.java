@@ -0,0 +1,141 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmark of the adaptive choices on wide tables, where each filter
+ * update and cell update must locate the filter and the editor handle of
+ * its column.<br>
+ * All the operations are run on the event dispatch thread, as a table
+ * would; the cost of that hand-off is included on each operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class WideTableBenchmark {
+
+    @Param({ "250", "400" })
+    int columns;
+
+    @Param({ "1000" })
+    int rows;
+
+    DefaultTableModel model;
+    TableFilterHeader header;
+    int column;
+    int value;
+
+    @Setup(Level.Trial) public void setUp() throws Exception {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    model = new DefaultTableModel(rows, columns) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override public Class<?> getColumnClass(int c) {
+                            return Integer.class;
+                        }
+                    };
+                    for (int r = 0; r < rows; r++) {
+                        for (int c = 0; c < columns; c++) {
+                            model.setValueAt((r * 31 + c) % 50, r, c);
+                        }
+                    }
+
+                    header = new TableFilterHeader(new JTable(model),
+                            AutoChoices.ENABLED);
+                    header.setAdaptiveChoices(true);
+                    // a few filters, so every update must evaluate them
+                    for (int c = 0; c < columns; c += columns / 4) {
+                        header.getFilterEditor(c).setContent("< 40");
+                    }
+                }
+            });
+    }
+
+    @TearDown(Level.Trial) public void tearDown() throws Exception {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    header.setTable(null);
+                }
+            });
+    }
+
+    /** Sets and clears a filter, on a different column each time. */
+    @Benchmark public void filterUpdate() throws Exception {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    IFilterEditor editor = header.getFilterEditor(
+                            nextColumn());
+                    Object content = editor.getContent();
+                    editor.setContent("> 2");
+                    editor.setContent(content);
+                }
+            });
+    }
+
+    /** Updates a cell, on a different column each time. */
+    @Benchmark public void cellUpdate() throws Exception {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    int c = nextColumn();
+                    model.setValueAt(++value % 50, value % rows, c);
+                }
+            });
+    }
+
+    int nextColumn() {
+        column = (column + 7) % columns;
+        return column;
+    }
+
+    private static void runOnEdt(Runnable runnable) throws Exception {
+        SwingUtilities.invokeAndWait(runnable);
+    }
+}
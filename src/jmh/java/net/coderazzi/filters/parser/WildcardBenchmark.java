@@ -0,0 +1,128 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.RowFilter;
+
+import net.coderazzi.filters.gui.ParserModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmark of the wildcard operator on each expression shape: exact,
+ * prefix, suffix, contains, glob and the regular expression fallback.<br>
+ * The score is the time to evaluate one row, a random string of 12 lower
+ * case letters; the strings are not cached, as the column has no format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WildcardBenchmark {
+
+    static final int ROWS = 4096;
+
+    @Param({ "abcdefghijkl", "ab*", "*ab", "*ab*", "a*b*c", "*a?b*" })
+    String expression;
+
+    @Param({ "false", "true" })
+    boolean ignoreCase;
+
+    RowFilter filter;
+    Row rows[];
+
+    @Setup public void setUp() throws Exception {
+        Parser parser = new Parser(null, null,
+                new ParserModel().getStringComparator(ignoreCase),
+                ignoreCase, 0);
+        filter = parser.parseText(expression);
+
+        Random random = new Random(ROWS);
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            char chars[] = new char[12];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = (char) ('a' + random.nextInt(26));
+            }
+
+            rows[i] = new Row(new String(chars));
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(ROWS)
+    public int include() {
+        int ret = 0;
+        for (Row row : rows) {
+            if (filter.include(row)) {
+                ret++;
+            }
+        }
+
+        return ret;
+    }
+
+    /** A row with one string, and no identifier. */
+    static final class Row extends RowFilter.Entry {
+        private final String value;
+
+        Row(String value) {
+            this.value = value;
+        }
+
+        @Override public Object getModel() {
+            return null;
+        }
+
+        @Override public int getValueCount() {
+            return 1;
+        }
+
+        @Override public Object getValue(int index) {
+            return value;
+        }
+
+        @Override public Object getIdentifier() {
+            return null;
+        }
+    }
+}
@@ -50,12 +50,6 @@ public class AndFilter extends ComposedFilter {
 
     /** @see  IFilter#include(RowFilter.Entry) */
     @Override public boolean include(RowFilter.Entry rowEntry) {
-        for (IFilter filter : filters) {
-            if (filter.isEnabled() && !filter.include(rowEntry)) {
-                return false;
-            }
-        }
-
-        return true;
+        return !evaluate(rowEntry, false);
     }
 }
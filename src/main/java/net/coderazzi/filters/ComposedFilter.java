@@ -25,25 +25,46 @@
 
 package net.coderazzi.filters;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import javax.swing.RowFilter;
+
+import net.coderazzi.filters.internal.EvaluationOrder;
+
 
 /**
  * <p>Abstract parent class to support the composition of multiple filters.</p>
  *
  * <p>The exact composition semantics (and / or / not) are not defined.</p>
  *
+ * <p>The associated filters are evaluated in an order that changes at
+ * runtime: periodically, the filters that decide faster the composed result
+ * (cheap to evaluate and often decisive) are moved first. The statistics
+ * used for this ordering are available via {@link #getStatistics()}; they
+ * are only gathered on the event dispatch thread, any other thread evaluates
+ * the filters in the current order.</p>
+ *
  * @author  Luis M Pena - lu@coderazzi.net
  */
 abstract public class ComposedFilter extends Filter implements IFilterObserver {
 
     /** Set of associated IFilters. */
-    protected Set<IFilter> filters;
+    private Set<IFilter> filters;
 
     /** disabled filters. */
     private Set<IFilter> disabledFilters = new HashSet<IFilter>();
 
+    /** The statistics of each filter, in evaluation order. */
+    private volatile FilterStatistics order[] = new FilterStatistics[0];
+
+    /** Number of evaluations since the last reordering. */
+    private int evaluations;
+
     /** Default constructor. */
     protected ComposedFilter() {
         filters = new HashSet<IFilter>();
@@ -63,8 +84,10 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
      * receive filter events from this composition filter.
      */
     public void addFilter(IFilter... filtersToAdd) {
+        EvaluationOrder.captureStatisticsThread();
         for (IFilter filter : filtersToAdd) {
             if (filters.add(filter)) {
+                addStatistics(filter);
                 filter.addFilterObserver(this);
                 if (filter.isEnabled()) {
                     super.setEnabled(true);
@@ -80,6 +103,7 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
      * previously subscribed to receive filter events.
      */
     public void removeFilter(IFilter... filtersToRemove) {
+        EvaluationOrder.captureStatisticsThread();
         boolean report = false;
         for (IFilter filter : filtersToRemove) {
             if (filters.remove(filter)) {
@@ -90,6 +114,7 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
         }
 
         if (report) {
+            removeStatistics();
             if (isEnabled() && !filters.isEmpty()
                     && (disabledFilters.size() == filters.size())) {
                 super.setEnabled(false);
@@ -109,6 +134,7 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
 
     /** @see  IFilterObserver#filterUpdated(IFilter) */
     @Override public void filterUpdated(IFilter filter) {
+        EvaluationOrder.captureStatisticsThread();
         boolean enabled = isEnabled();
         boolean changeState = false;
         if (filter.isEnabled()) {
@@ -144,4 +170,138 @@ abstract public class ComposedFilter extends Filter implements IFilterObserver {
         return disabledFilters.contains(filter);
     }
 
+    /** Returns true if any of the associated filters is enabled. */
+    protected boolean hasEnabledFilters() {
+        return disabledFilters.size() < filters.size();
+    }
+
+    /**
+     * Returns the evaluation statistics of each associated filter, in the
+     * order they are currently evaluated.<br>
+     * The statistics are live: they keep being updated on the event dispatch
+     * thread, where this method should be called. The filter header updates
+     * them as well, when it evaluates this filter.
+     */
+    public List<FilterStatistics> getStatistics() {
+        return new ArrayList<FilterStatistics>(Arrays.asList(order));
+    }
+
+    /**
+     * Evaluates the enabled filters, in the current order, until one returns
+     * the decisive value.
+     *
+     * @param   decisive  the value deciding the composed result: false for
+     *                    AND compositions, true for OR compositions
+     *
+     * @return  true if any filter returned the decisive value
+     */
+    protected boolean evaluate(RowFilter.Entry rowEntry, boolean decisive) {
+        FilterStatistics current[] = order;
+        if (!EvaluationOrder.isStatisticsThread()) {
+            for (FilterStatistics stats : current) {
+                IFilter filter = stats.filter;
+                if (filter.isEnabled()
+                        && (filter.include(rowEntry) == decisive)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        boolean sample = (evaluations & EvaluationOrder.SAMPLE_MASK) == 0;
+        if (++evaluations == EvaluationOrder.REORDER_PERIOD) {
+            evaluations = 0;
+            reorder(current);
+        }
+
+        for (FilterStatistics stats : current) {
+            IFilter filter = stats.filter;
+            if (filter.isEnabled()) {
+                boolean include;
+                if (sample) {
+                    long start = System.nanoTime();
+                    include = filter.include(rowEntry);
+                    stats.timed(System.nanoTime() - start);
+                } else {
+                    include = filter.include(rowEntry);
+                }
+
+                stats.evaluated(include == decisive);
+                if (include == decisive) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sorts the filters by their expected cost to decide the composed
+     * result. The sort is stable, and the statistics are then halved, so
+     * that older evaluations weigh less on the next reordering.
+     */
+    private void reorder(FilterStatistics current[]) {
+        FilterStatistics sorted[] = current.clone();
+        for (FilterStatistics stats : sorted) {
+            stats.updateRank();
+        }
+
+        Arrays.sort(sorted, new Comparator<FilterStatistics>() {
+                @Override public int compare(FilterStatistics o1,
+                                             FilterStatistics o2) {
+                    return Double.compare(o1.getRank(), o2.getRank());
+                }
+            });
+        setOrder(current, sorted);
+    }
+
+    /** Appends the statistics for a new filter, evaluated last. */
+    private synchronized void addStatistics(IFilter filter) {
+        FilterStatistics update[] = Arrays.copyOf(order, order.length + 1);
+        update[order.length] = new FilterStatistics(filter);
+        order = update;
+    }
+
+    /** Removes the statistics of the filters no longer associated. */
+    private synchronized void removeStatistics() {
+        List<FilterStatistics> update = new ArrayList<FilterStatistics>();
+        for (FilterStatistics stats : order) {
+            if (filters.contains(stats.filter)) {
+                update.add(stats);
+            }
+        }
+
+        order = update.toArray(new FilterStatistics[update.size()]);
+    }
+
+    /** Sets the evaluation order, unless it has been modified meanwhile. */
+    private synchronized void setOrder(FilterStatistics expected[],
+                                       FilterStatistics update[]) {
+        if (order == expected) {
+            order = update;
+        }
+    }
+
+    /** Evaluation statistics of a filter inside a {@link ComposedFilter}. */
+    public static final class FilterStatistics
+        extends EvaluationOrder.Statistics {
+        IFilter filter;
+
+        FilterStatistics(IFilter filter) {
+            this.filter = filter;
+        }
+
+        /** Returns the associated filter. */
+        public IFilter getFilter() {
+            return filter;
+        }
+
+        @Override public String toString() {
+            return filter + ": " + getDecisions() + "/" + getEvaluations()
+                + " decisive, " + Math.round(getAverageCost()) + " ns";
+        }
+    }
+
 }
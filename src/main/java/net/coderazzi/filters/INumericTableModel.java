@@ -0,0 +1,50 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters;
+
+/**
+ * Optional interface for table models providing the values of their numeric
+ * columns as primitives.<br>
+ * The default parser uses it to compare those values with numeric operands,
+ * like &quot;&gt; 4&quot;, without creating any wrapper instance.
+ */
+public interface INumericTableModel {
+
+    /**
+     * Returns true if the values of the column can be obtained using
+     * {@link #getLong(int, int)} -for Integer or Long columns- or {@link
+     * #getDouble(int, int)} -for Float or Double columns-; such columns cannot
+     * contain null values.<br>
+     * The answer for a given column must not change while filtering.
+     */
+    boolean isNumericColumn(int column);
+
+    /** Returns the value, as a long, on the given model row and column. */
+    long getLong(int row, int column);
+
+    /** Returns the value, as a double, on the given model row and column. */
+    double getDouble(int row, int column);
+}
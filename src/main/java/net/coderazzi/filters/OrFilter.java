@@ -50,17 +50,7 @@ public class OrFilter extends ComposedFilter {
 
     /** @see  IFilter#include(RowFilter.Entry) */
     @Override public boolean include(RowFilter.Entry rowEntry) {
-        boolean ret = true;
-        for (IFilter filter : filters) {
-            if (filter.isEnabled()) {
-                if (filter.include(rowEntry)) {
-                    return true;
-                }
-
-                ret = false;
-            }
-        }
-
-        return ret;
+        // with no enabled filters, all rows are included
+        return evaluate(rowEntry, true) || !hasEnabledFilters();
     }
 }
@@ -28,15 +28,23 @@ package net.coderazzi.filters.gui;
 import java.text.Format;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableModel;
 
@@ -63,6 +71,11 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
         return adaptiveSupport;
     }
 
+    @Override public RowBitmap consumeChangedRows() {
+        return (adaptiveSupport == null)
+            ? null : adaptiveSupport.consumeChangedRows();
+    }
+
     @Override public boolean setInterrupted(boolean interrupted) {
         // while interrupted, remove the adaptive support, and create it
         // only when the interruption finishes. There is no sense trying to
@@ -90,6 +103,12 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
         }
     }
 
+    @Override public void choicesRequested(FilterEditor editor) {
+        if (adaptiveSupport != null) {
+            adaptiveSupport.choicesRequested(editor);
+        }
+    }
+
     @Override public boolean filterUpdated(IFilter filter,
                                            boolean retInfoRequired) {
         // nothing to do with retInfoRequired, always return the value
@@ -143,7 +162,8 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
         Collection<FilterEditor> eds = handler.getEditors();
         FilterEditor array[] = eds.toArray(new FilterEditor[eds.size()]);
         adaptiveSupport = new AdaptiveChoicesSupport(handler.getTable()
-                    .getModel(), array, handler.getFilters());
+                    .getModel(), array, handler.getFilters(),
+                handler.isBackgroundChoices(), handler.isLazyChoices());
         setEnableTableModelEvents(true);
     }
 
@@ -153,6 +173,7 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             return false;
         }
 
+        adaptiveSupport.dispose();
         adaptiveSupport = null;
         setEnableTableModelEvents(false);
 
@@ -162,11 +183,25 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
     /**
      * Helper class, holding, for each row and filter (editor or user defined),
      * a bit defining whether it is filtered in or out.<br>
+     * This information is kept columnar: a {@link RowBitmap} per filter, plus
+     * a bitmap with the rows passing all the filters.
      */
     static class AdaptiveChoicesSupport extends RowFilter {
 
-        /** A RowInfo for each row on the table model. */
-        private ArrayList<RowInfo> rows;
+        /** The number of model rows currently handled. */
+        private int rowCount;
+
+        /** The rows that pass all the filters. */
+        private RowBitmap passing = new RowBitmap();
+
+        /** The number of filters that each row fails. */
+        private RowInfo.Failures failures;
+
+        /**
+         * The rows whose inclusion in {@link #passing} has changed since the
+         * last call to {@link #consumeChangedRows()}, or null if unknown.
+         */
+        private RowBitmap changedRows;
 
         /** A single instance to check the filters of every row/column. */
         private RowEntry rowEntry;
@@ -178,6 +213,16 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
          */
         private EditorHandle editorHandles[];
 
+        /**
+         * The EditorHandle for each model column, or null if the column has
+         * no editor. Its position in editorHandles is kept on the handle.
+         */
+        private EditorHandle columnHandles[];
+
+        /** The {@link RowInfo.Filter} associated to each {@link IFilter}. */
+        private Map<IFilter, RowInfo.Filter> filtersIndex =
+            new IdentityHashMap<IFilter, RowInfo.Filter>();
+
         /**
          * Each of the defined .<br>
          * Elsewhere, it is kept as a Set, but here, it is needed to associate a
@@ -189,18 +234,36 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
          */
         private RowInfo.Filter filters[];
 
+        /** Set if the choices are extracted on a background thread. */
+        private boolean background;
+
+        /** Set if the choices are only extracted for editors needing them. */
+        private boolean lazy;
+
+        /**
+         * Counter increased on each change affecting the choices, so that
+         * background extractions can detect that they are outdated.
+         */
+        private volatile int generation;
+
         /**
          * Only constructor; note: the parameter allFilters set is modified on
          * the constructor.
          */
         public AdaptiveChoicesSupport(TableModel   model,
                                       FilterEditor editors[],
-                                      Set<IFilter> allFilters) {
+                                      Set<IFilter> allFilters,
+                                      boolean      background,
+                                      boolean      lazy) {
             // note that the allFilters set will be modified
+            // the model is only read in background through its snapshots
+            this.background = background
+                    && (model instanceof ISnapshotTableModel);
+            this.lazy = lazy;
             int columns = model.getColumnCount();
             int edLen = editors.length;
-            rows = new ArrayList<RowInfo>(model.getRowCount() + 1);
             editorHandles = new EditorHandle[edLen];
+            columnHandles = new EditorHandle[columns];
 
             // note: columns could be different from editors.length if some
             // column has been removed from the model
@@ -211,7 +274,12 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
 
             for (FilterEditor editor : editors) {
                 int column = editor.getModelIndex();
-                this.editorHandles[--edLen] = new EditorHandle(editor, model);
+                EditorHandle handle = new EditorHandle(editor, model);
+                handle.position = --edLen;
+                editorHandles[edLen] = handle;
+                if (column < columnHandles.length) {
+                    columnHandles[column] = handle;
+                }
 
                 IFilter filter = editor.getFilter();
                 allFilters.remove(filter);
@@ -223,6 +291,14 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
                 columns++;
             }
 
+            for (RowInfo.Filter filter : filters) {
+                if (filter != null) {
+                    filtersIndex.put(filter.filter, filter);
+                }
+            }
+
+            failures = new RowInfo.Failures(filters.length);
+
             rowEntry = new RowEntry(model, editors);
             rowsAdded(0, model.getRowCount() - 1);
         }
@@ -232,14 +308,44 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
                                  int firstRow,
                                  int lastRow,
                                  int column) {
+            // the sorter handles itself the table events; any previous
+            // changes not yet consumed cannot be tracked anymore
+            boolean tracked = (changedRows != null) && changedRows.isEmpty();
+            changedRows = null;
+            for (RowInfo.Filter filter : filters) {
+                if (filter != null) {
+                    filter.clearResults();
+                }
+            }
+
+            handleTableEvent(event, firstRow, lastRow, column);
+            changedRows = tracked ? new RowBitmap(rowCount, false) : null;
+        }
+
+        /**
+         * Returns the rows whose filtering status has changed since the last
+         * call, or null if that information is not available -any row could
+         * have changed-.
+         */
+        public RowBitmap consumeChangedRows() {
+            RowBitmap ret = changedRows;
+            changedRows = new RowBitmap(rowCount, false);
+            return ret;
+        }
+
+        /** Handles an table model event. */
+        private void handleTableEvent(int event,
+                                      int firstRow,
+                                      int lastRow,
+                                      int column) {
             if (column != TableModelEvent.ALL_COLUMNS) {
                 rowsUpdated(firstRow, lastRow, column);
             } else if (event == TableModelEvent.UPDATE) {
                 // an update can signal that all cells have changed
                 // https://bitbucket.org/coderazzi/tablefilter-swing/issue/
                 //    8/enabled-adaptive-choices-cause
-                if (lastRow >= rows.size()) {
-                    rows.clear();
+                if (lastRow >= rowCount) {
+                    clearRows();
                     rowsAdded(0, rowEntry.getModel().getRowCount() - 1);
                 } else {
                     rowsUpdated(firstRow, lastRow, TableModelEvent.ALL_COLUMNS);
@@ -253,19 +359,33 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
 
         /** Handles a table model event after some rows are added. */
         private void rowsAdded(int firstRow, int lastRow) {
-            rows.ensureCapacity(rows.size() + lastRow - firstRow + 1);
+            int count = lastRow - firstRow + 1;
+            for (RowInfo.Filter filter : filters) {
+                if (filter != null) {
+                    filter.rows.insert(firstRow, count, true);
+                }
+            }
+
+            passing.insert(firstRow, count, true);
+            failures.insert(firstRow, count);
+            rowCount += count;
             for (int r = firstRow; r <= lastRow; r++) {
-                RowInfo row = new RowInfo(filters.length);
-                rows.add(r, row);
                 rowEntry.row = r;
-
                 for (RowInfo.Filter filter : filters) {
                     if ((filter != null) && !filter.include(rowEntry)) {
-                        filter.set(row, false);
+                        setRow(filter, r, false);
                     }
                 }
             }
 
+            for (EditorHandle handle : editorHandles) {
+                ChoicesCounter counter = handle.getCounter();
+                if (counter != null) {
+                    counter.rowsInserted(firstRow, count, rowEntry);
+                    countRows(handle, firstRow, lastRow, true);
+                }
+            }
+
             extractChoices(editorHandles.length, firstRow, lastRow);
         }
 
@@ -274,29 +394,82 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
          */
         private void rowsUpdated(int firstRow, int lastRow, int column) {
 
+            // remove from the counters the previous contents of the rows
+            for (EditorHandle handle : editorHandles) {
+                if (handle.getCounter() != null) {
+                    countRows(handle, firstRow, lastRow, false);
+                }
+            }
+
+            // on a single column, only its editor filter is affected, but
+            // the filters not associated to editors can read any column
             RowInfo.Filter filter = (column == TableModelEvent.ALL_COLUMNS)
                 ? null : filters[column];
-            while (firstRow <= lastRow) {
-                RowInfo row = rows.get(firstRow);
-                rowEntry.row = firstRow++;
+            int others = columnHandles.length;
+            for (int r = firstRow; r <= lastRow; r++) {
+                rowEntry.row = r;
                 if (filter == null) {
                     for (RowInfo.Filter f : filters) {
                         if (f != null) {
-                            f.set(row, f.include(rowEntry));
+                            setRow(f, r, f.include(rowEntry));
                         }
                     }
                 } else {
-                    filter.set(row, filter.include(rowEntry));
+                    setRow(filter, r, filter.include(rowEntry));
+                    for (int i = others; i < filters.length; i++) {
+                        setRow(filters[i], r, filters[i].include(rowEntry));
+                    }
+                }
+            }
+
+            for (EditorHandle handle : editorHandles) {
+                ChoicesCounter counter = handle.getCounter();
+                if (counter != null) {
+                    counter.rowsUpdated(firstRow, lastRow, rowEntry);
+                    countRows(handle, firstRow, lastRow, true);
                 }
             }
 
-            // reread all the model
+            // reread all the model (only required for the bounded editors)
             extractChoices(editorHandles.length, 0, -1);
         }
 
+        /** Removes all the rows, without updating the choices. */
+        private void clearRows() {
+            for (RowInfo.Filter filter : filters) {
+                if (filter != null) {
+                    filter.rows.clear();
+                }
+            }
+
+            passing.clear();
+            failures.clear();
+            rowCount = 0;
+            for (EditorHandle handle : editorHandles) {
+                handle.dropCounter();
+            }
+        }
+
         /** Handles a table model event after some rows are deleted. */
         private void rowsDeleted(int firstRow, int lastRow) {
-            rows.subList(firstRow, lastRow + 1).clear();
+            int count = lastRow - firstRow + 1;
+            for (EditorHandle handle : editorHandles) {
+                ChoicesCounter counter = handle.getCounter();
+                if (counter != null) {
+                    countRows(handle, firstRow, lastRow, false);
+                    counter.rowsRemoved(firstRow, count);
+                }
+            }
+
+            for (RowInfo.Filter filter : filters) {
+                if (filter != null) {
+                    filter.rows.remove(firstRow, count);
+                }
+            }
+
+            passing.remove(firstRow, count);
+            failures.remove(firstRow, count);
+            rowCount -= count;
             extractChoices(editorHandles.length, 0, -1);
         }
 
@@ -311,6 +484,9 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             boolean changed = 1 == (update & 1);
 
             if (changed) {
+                // any running background extraction is now outdated
+                ++generation;
+
                 // only propagate changes if this is not an editor
                 // or the editor has no focus (is still editing)
                 // https://bitbucket.org/coderazzi/tablefilter-swing/issue/
@@ -347,7 +523,9 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
 
             int width;
 
-            // and update the filter for this editor
+            // and update the filter for this editor, whose previous results
+            // could depend on the old formatter
+            filters[column].clearResults();
             int updateRowInfo = updateRowInfo(filters[fe.getModelIndex()],
                     fe.getFilter());
             if (1 == (1 & updateRowInfo)) {
@@ -372,23 +550,241 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
         private int updateRowInfo(RowInfo.Filter filter, IFilter iFilter) {
             int changedBit = 0;
             int anyBitSet = 1;
-            rowEntry.row = 0;
-            for (RowInfo ri : rows) {
-                boolean set = !iFilter.isEnabled() || iFilter.include(rowEntry);
-                if (filter.set(ri, set)) {
-                    changedBit = 1;
+            boolean enabled = iFilter.isEnabled();
+            RowBitmap rows = filter.rows;
+            RowBitmap flipped = new RowBitmap(rowCount, false);
+            Object expression = enabled ? getFilterExpression(filter) : null;
+            RowBitmap cached = null;
+            RowBitmap candidates = null;
+            if (expression != null) {
+                // the same expression could have been already evaluated
+                // (backspace), or be narrowing a previous one (typing)
+                cached = filter.getResult(expression);
+                if (cached == null) {
+                    candidates = filter.getNarrowedResult(columnHandles[
+                                filter.column].editor, expression);
                 }
+            }
 
-                if (set) {
-                    anyBitSet = 2;
+            if (cached != null) {
+                // restore the cached result: flip only the differing rows
+                for (int w = 0, words = rows.getWordCount(); w < words; w++) {
+                    long word = cached.getWord(w);
+                    long diff = rows.getWord(w) ^ word;
+                    int base = w << 6;
+                    while (diff != 0) {
+                        int r = base + Long.numberOfTrailingZeros(diff);
+                        diff &= diff - 1;
+                        setRow(filter, r, !rows.get(r));
+                        flipped.set(r, true);
+                        changedBit = 1;
+                    }
+
+                    if (word != 0) {
+                        anyBitSet = 2;
+                    }
                 }
+            } else if (candidates != null) {
+                // only the rows passing the narrowed filter can pass now
+                for (int w = 0, words = rows.getWordCount(); w < words; w++) {
+                    long word = candidates.getWord(w);
+                    long drop = rows.getWord(w) & ~word;
+                    int base = w << 6;
+                    while (drop != 0) {
+                        int r = base + Long.numberOfTrailingZeros(drop);
+                        drop &= drop - 1;
+                        setRow(filter, r, false);
+                        flipped.set(r, true);
+                        changedBit = 1;
+                    }
+
+                    while (word != 0) {
+                        int r = base + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        rowEntry.row = r;
 
-                rowEntry.row++;
+                        boolean set = iFilter.include(rowEntry);
+                        if (setRow(filter, r, set)) {
+                            flipped.set(r, true);
+                            changedBit = 1;
+                        }
+
+                        if (set) {
+                            anyBitSet = 2;
+                        }
+                    }
+                }
+            } else {
+                for (int r = 0; r < rowCount; r++) {
+                    rowEntry.row = r;
+
+                    boolean set = !enabled || iFilter.include(rowEntry);
+                    if (setRow(filter, r, set)) {
+                        flipped.set(r, true);
+                        changedBit = 1;
+                    }
+
+                    if (set) {
+                        anyBitSet = 2;
+                    }
+                }
+            }
+
+            if (expression != null) {
+                filter.addResult(expression, rows);
+            }
+
+            if (changedBit == 1) {
+                updateCounters(filter.column, flipped, rows);
             }
 
             return changedBit | anyBitSet;
         }
 
+        /**
+         * Returns the expression behind the filter of the editor associated
+         * to the given filter, or null if there is no editor or expression.
+         */
+        private Object getFilterExpression(RowInfo.Filter filter) {
+            EditorHandle handle = (filter.column < columnHandles.length)
+                ? columnHandles[filter.column] : null;
+
+            return ((handle == null) || (handle.editor.getFilter()
+                            != filter.filter))
+                ? null : handle.editor.getFilterExpression();
+        }
+
+        /**
+         * Updates the choices counters after a change on the given filter,
+         * considering only the rows whose state has changed (flipped).
+         */
+        private void updateCounters(int       column,
+                                    RowBitmap flipped,
+                                    RowBitmap after) {
+            int len = editorHandles.length;
+            EditorHandle handles[] = new EditorHandle[len];
+            int counters = 0;
+            for (EditorHandle handle : editorHandles) {
+                if ((handle.column != column)
+                        && (handle.getCounter() != null)) {
+                    handles[counters++] = handle;
+                }
+            }
+
+            for (int w = 0, words = after.getWordCount(); w < words; w++) {
+                long diff = flipped.getWord(w);
+                int base = w << 6;
+                while (diff != 0) {
+                    int row = base + Long.numberOfTrailingZeros(diff);
+                    diff &= diff - 1;
+
+                    boolean included = after.get(row);
+                    for (int i = 0; i < counters; i++) {
+                        EditorHandle handle = handles[i];
+                        if (passesExcept(row, handle.column, column)) {
+                            handle.counter.count(row, included);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds (or removes) the given rows to the counter of the given handle,
+         * for those rows passing all the filters but the handle's one.
+         */
+        private void countRows(EditorHandle handle,
+                               int          firstRow,
+                               int          lastRow,
+                               boolean      add) {
+            for (int r = firstRow; r <= lastRow; r++) {
+                if (passesExcept(r, handle.column, -1)) {
+                    handle.counter.count(r, add);
+                }
+            }
+        }
+
+        /**
+         * Builds from scratch the counter of the given handle, reading the
+         * whole model.
+         */
+        private void rebuildCounter(EditorHandle handle) {
+            ChoicesCounter counter = handle.createCounter();
+            counter.rowsInserted(0, rowCount, rowEntry);
+            if (rowCount == 0) {
+                return;
+            }
+
+            int column = handle.column;
+            int lastWord = (rowCount - 1) >>> 6;
+            for (int w = 0; w <= lastWord; w++) {
+                long word = (w == lastWord)
+                    ? (-1L >>> (63 - ((rowCount - 1) & 63))) : -1L;
+                for (int f = filters.length - 1; f >= 0; f--) {
+                    RowInfo.Filter filter = filters[f];
+                    if ((f != column) && (filter != null)) {
+                        word &= filter.rows.getWord(w);
+                    }
+                }
+
+                int base = w << 6;
+                while (word != 0) {
+                    counter.count(base + Long.numberOfTrailingZeros(word),
+                        true);
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the row passes all the filters, but those at the
+         * given positions (other can be -1).
+         */
+        private boolean passesExcept(int row, int column, int other) {
+            int count = failures.get(row);
+            if ((count > 0) && fails(filters[column], row)) {
+                --count;
+            }
+
+            if ((count > 0) && (other != -1) && fails(filters[other], row)) {
+                --count;
+            }
+
+            return count == 0;
+        }
+
+        /** Returns true if the filter exists and the row does not pass it. */
+        private boolean fails(RowInfo.Filter filter, int row) {
+            return (filter != null) && !filter.rows.get(row);
+        }
+
+        /**
+         * Sets whether the row passes the given filter, updating the number of
+         * failing filters and the rows passing all the filters.
+         *
+         * @return  true if it implies a change
+         */
+        private boolean setRow(RowInfo.Filter filter, int row, boolean pass) {
+            if (!filter.rows.set(row, pass)) {
+                return false;
+            }
+
+            int count = failures.add(row, pass ? -1 : 1);
+            if ((count == 0) || ((count == 1) && !pass)) {
+                passing.set(row, pass);
+                if (changedRows != null) {
+                    changedRows.set(row, true);
+                }
+            }
+
+            return true;
+        }
+
+        /** Discards any pending background extraction. */
+        public void dispose() {
+            ++generation;
+        }
+
         /** Forces the initialisation of the choices of a editor filter. */
         public void initChoices(IFilter iFilter) {
             RowInfo.Filter filter = getFilter(iFilter);
@@ -399,15 +795,18 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             }
         }
 
-        /** Returns the filter with the given {@link IFilter}. */
-        private RowInfo.Filter getFilter(IFilter filter) {
-            for (RowInfo.Filter f : filters) {
-                if ((f != null) && (f.filter == filter)) {
-                    return f;
-                }
+        /** Extracts the choices of an editor, previously deferred. */
+        public void choicesRequested(FilterEditor editor) {
+            int handle = getEditorHandle(editor.getModelIndex());
+            if (handle >= 0) {
+                switchHandle(handle, 0);
+                extractRequiredChoices(1, 0, -1);
             }
+        }
 
-            return null;
+        /** Returns the filter with the given {@link IFilter}. */
+        private RowInfo.Filter getFilter(IFilter filter) {
+            return filtersIndex.get(filter);
         }
 
         /**
@@ -420,7 +819,70 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
          * @param  lastRow  can be -1 to represent the whole model
          */
         private void extractChoices(int handles, int firstRow, int lastRow) {
-            int rows = rowEntry.getModelRowCount() - 1;
+            if (lazy) {
+                handles = deferChoices(handles);
+            }
+
+            if (handles > 0) {
+                extractRequiredChoices(handles, firstRow, lastRow);
+            }
+        }
+
+        /**
+         * Moves out of the first handles those whose editors do not need
+         * now the choices, which are then extracted on demand.
+         *
+         * @return  the number of handles whose choices are still needed
+         */
+        private int deferChoices(int handles) {
+            for (int i = 0; i < handles;) {
+                EditorHandle handle = editorHandles[i];
+                if (handle.editor.isChoicesInUse()) {
+                    ++i;
+                } else {
+                    // no need to maintain the counter until requested
+                    handle.dropCounter();
+                    handle.pending = false;
+                    handle.editor.setChoicesDirty();
+                    switchHandle(i, --handles);
+                }
+            }
+
+            return handles;
+        }
+
+        /**
+         * Extracts the choices of the first handles, as in {@link
+         * #extractChoices(int, int, int)}, without deferring any of them.
+         */
+        private void extractRequiredChoices(int handles,
+                                            int firstRow,
+                                            int lastRow) {
+            if (background) {
+                // the filters of the custom choices are evaluated on the EDT,
+                // so their handles are kept first, and extracted below
+                int sequential = 0;
+                for (int i = 0; i < handles; i++) {
+                    if (editorHandles[i].customChoices != null) {
+                        switchHandle(i, sequential++);
+                    }
+                }
+
+                for (int i = sequential; i < handles; i++) {
+                    editorHandles[i].pending = true;
+                }
+
+                if (sequential < handles) {
+                    scheduleExtraction();
+                }
+
+                handles = sequential;
+                if (handles == 0) {
+                    return;
+                }
+            }
+
+            int rows = rowCount - 1;
             if (lastRow == -1) {
                 lastRow = rows;
             }
@@ -428,7 +890,12 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             boolean fullMode = (firstRow == 0) && (lastRow == rows);
             int check = handles;
             for (int i = 0; i < check;) {
-                if (editorHandles[i].startIteration(fullMode)) {
+                EditorHandle handle = editorHandles[i];
+                if (handle.requiresCounter()) {
+                    rebuildCounter(handle);
+                }
+
+                if (handle.startIteration(fullMode)) {
                     // if startIteration returns true, this editor will require
                     // no additional iteration (move it to the end)
                     switchHandle(i, --check);
@@ -445,23 +912,275 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             }
         }
 
-        /** handle all the rows in [firstRow, lastRow). */
+        /**
+         * Starts a background extraction for all the pending handles,
+         * cancelling any extraction in progress.<br>
+         * The handles whose editors display their popup are extracted first,
+         * on their own: the background executor runs the extractions in
+         * order, so their choices are not delayed by the other editors.
+         */
+        private void scheduleExtraction() {
+            ++generation;
+
+            BackgroundExtraction popups = scheduleExtraction(true, null);
+            scheduleExtraction(false, popups);
+        }
+
+        /**
+         * Starts a background extraction for the pending handles whose
+         * editors display -or not- their popup, returning it, or null if
+         * there are no such handles.
+         *
+         * @param  shared  a previous extraction, to share its model snapshot
+         *                 and filter bitmaps, or null
+         */
+        private BackgroundExtraction scheduleExtraction(
+                boolean              popups,
+                BackgroundExtraction shared) {
+            int len = editorHandles.length;
+            EditorHandle copies[] = new EditorHandle[len];
+            int iterate = 0;
+            len = 0;
+            for (EditorHandle handle : editorHandles) {
+                if (handle.pending
+                        && (handle.editor.isPopupVisible() == popups)) {
+                    if (handle.editor.isEnabled()) {
+                        EditorHandle copy = handle.copy();
+                        copies[len++] = copy;
+                        if (!copy.startIteration(true)) {
+                            // the handles to iterate are kept first
+                            switchHandle(copies, len - 1, iterate++);
+                        }
+                    } else {
+                        handle.pending = false;
+                    }
+                }
+            }
+
+            if (len == 0) {
+                return null;
+            }
+
+            EditorHandle handles[] = new EditorHandle[len];
+            System.arraycopy(copies, 0, handles, 0, len);
+
+            BackgroundExtraction ret = new BackgroundExtraction(handles,
+                    iterate, shared);
+            getBackgroundExecutor().execute(ret);
+
+            return ret;
+        }
+
+        /**
+         * Returns the bitmap associated to each filter, or null if there is
+         * no filter on a given position.
+         */
+        private RowBitmap[] getBitmaps(boolean copy) {
+            int len = filters.length;
+            RowBitmap ret[] = new RowBitmap[len];
+            while (len-- > 0) {
+                RowInfo.Filter filter = filters[len];
+                if (filter != null) {
+                    ret[len] = copy ? filter.rows.copy() : filter.rows;
+                }
+            }
+
+            return ret;
+        }
+
+        /**
+         * handle all the rows in [firstRow, lastRow].<br>
+         * Rows are handled in blocks of 64 (a bitmap word): for each block,
+         * it is calculated, for each filter, the rows passing all the other
+         * filters, using the AND of the words before (prefix) and after
+         * (suffix) that filter.
+         */
         private void iterateRows(int handles, int firstRow, int lastRow) {
-            for (; firstRow <= lastRow; firstRow++) {
-                rowEntry.row = firstRow;
+            iterateRows(editorHandles, handles, getBitmaps(false), rowEntry,
+                firstRow, lastRow, null, true);
+        }
+
+        /**
+         * Version of {@link #iterateRows(EditorHandle[], int, RowBitmap[],
+         * RowEntry, int, int, BackgroundExtraction)} that can use several
+         * threads, if parallel is true and there are enough rows, see {@link
+         * FilterSettings#parallelChoicesThreshold}.<br>
+         * The rows are split in chunks, each handled by a separate copy of
+         * the handles; the choices found on each chunk are then merged. A
+         * handle completing its choices on any chunk stops the iteration
+         * on all the chunks.<br>
+         * Handles with custom choices are handled on the calling thread, as
+         * the custom choices' filters could be not thread safe.
+         */
+        static void iterateRows(EditorHandle         editorHandles[],
+                                int                  handles,
+                                RowBitmap            bitmaps[],
+                                RowEntry             rowEntry,
+                                int                  firstRow,
+                                int                  lastRow,
+                                BackgroundExtraction extraction,
+                                boolean              parallel) {
+            int threshold = FilterSettings.parallelChoicesThreshold;
+            int threads = FilterSettings.parallelThreads;
+            int firstWord = firstRow >>> 6;
+            int words = (lastRow >>> 6) - firstWord + 1;
+            int chunks = Math.min(threads, words);
+            EditorHandle sequential[] = new EditorHandle[handles];
+            int sequentialHandles = 0;
+            int parallelHandles = 0;
+            if (parallel && (threshold > 0)
+                    && (lastRow - firstRow + 1 >= threshold) && (chunks > 1)) {
+                // move the handles to parallelize at the beginning
+                for (int i = 0; i < handles; i++) {
+                    EditorHandle handle = editorHandles[i];
+                    if (handle.customChoices == null) {
+                        handle.completed = false;
+                        switchHandle(editorHandles, i, parallelHandles++);
+                    } else {
+                        sequential[sequentialHandles++] = handle;
+                    }
+                }
+            }
+
+            if (parallelHandles == 0) {
+                iterateRows(editorHandles, handles, bitmaps, rowEntry,
+                    firstRow, lastRow, extraction);
+                return;
+            }
+
+            List<EditorHandle[]> copies = new ArrayList<EditorHandle[]>();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            ExecutorService executor = getParallelExecutor();
+            for (int c = 0; c < chunks; c++) {
+                final int from = (c == 0)
+                    ? firstRow : ((firstWord + ((c * words) / chunks)) << 6);
+                final int to = (c == (chunks - 1))
+                    ? lastRow
+                    : (((firstWord + (((c + 1) * words) / chunks)) << 6) - 1);
+                final EditorHandle chunk[] = new EditorHandle[parallelHandles];
+                for (int i = 0; i < parallelHandles; i++) {
+                    chunk[i] = editorHandles[i].copyForChunk();
+                }
+
+                final RowBitmap chunkBitmaps[] = bitmaps;
+                final RowEntry entry = new RowEntry(rowEntry);
+                final BackgroundExtraction chunkExtraction = extraction;
+                copies.add(chunk);
+                futures.add(executor.submit(new Runnable() {
+                            @Override public void run() {
+                                iterateRows(chunk, chunk.length, chunkBitmaps,
+                                    entry, from, to, chunkExtraction);
+                            }
+                        }));
+            }
+
+            iterateRows(sequential, sequentialHandles, bitmaps, rowEntry,
+                firstRow, lastRow, extraction);
+
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException ie) {
+                        interrupted = true;
+                    } catch (ExecutionException ee) {
+                        Throwable cause = ee.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
 
-                RowInfo row = rows.get(firstRow);
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (EditorHandle chunk[] : copies) {
+                for (EditorHandle copy : chunk) {
+                    copy.parent.choices.addAll(copy.choices);
+                }
+            }
+        }
+
+        /**
+         * Static version of {@link #iterateRows(int, int, int)}, working on
+         * the given handles and bitmaps (one per filter, can be null).<br>
+         * If an extraction is given, the iteration stops as soon as the
+         * extraction is cancelled.
+         */
+        static void iterateRows(EditorHandle         editorHandles[],
+                                int                  handles,
+                                RowBitmap            bitmaps[],
+                                RowEntry             rowEntry,
+                                int                  firstRow,
+                                int                  lastRow,
+                                BackgroundExtraction extraction) {
+            if (firstRow > lastRow) {
+                return;
+            }
+
+            int len = bitmaps.length;
+            long prefix[] = new long[len + 1];
+            long suffix[] = new long[len + 1];
+            int firstWord = firstRow >>> 6;
+            int lastWord = lastRow >>> 6;
+            suffix[len] = -1L;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long mask = -1L;
+                if (w == firstWord) {
+                    mask &= -1L << firstRow;
+                }
+
+                if (w == lastWord) {
+                    mask &= -1L >>> (63 - (lastRow & 63));
+                }
+
+                if ((extraction != null) && extraction.isCancelled()) {
+                    return;
+                }
+
+                prefix[0] = mask;
+                for (int f = 0; f < len; f++) {
+                    RowBitmap bitmap = bitmaps[f];
+                    prefix[f + 1] = (bitmap == null)
+                        ? prefix[f] : (prefix[f] & bitmap.getWord(w));
+                }
+
+                for (int f = len - 1; f >= 0; f--) {
+                    RowBitmap bitmap = bitmaps[f];
+                    suffix[f] = (bitmap == null)
+                        ? suffix[f + 1] : (suffix[f + 1] & bitmap.getWord(w));
+                }
+
+                int base = w << 6;
                 for (int i = 0; i < handles;) {
                     EditorHandle handle = editorHandles[i++];
-                    if (filters[handle.column].is(row)) {
+                    int column = handle.column;
+                    boolean completed = handle.isCompleted();
+                    long word = completed
+                        ? 0 : (prefix[column] & suffix[column + 1]);
+                    while (word != 0) {
+                        rowEntry.row = base + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
                         if (handle.handleRow(rowEntry)) {
-                            // if handleRow returns true, this editor will
-                            // require no additional iteration (move it to the
-                            // end) if no handles remain, just return
-                            switchHandle(--i, --handles);
-                            if (handles == 0) {
-                                return;
-                            }
+                            handle.setCompleted();
+                            completed = true;
+                            break;
+                        }
+                    }
+
+                    if (completed) {
+                        // this editor will require no additional iteration
+                        // (move it to the end) if no handles remain, just
+                        // return
+                        switchHandle(editorHandles, --i, --handles);
+                        if (handles == 0) {
+                            return;
                         }
                     }
                 }
@@ -470,35 +1189,139 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
 
         /** Moves the handle at the given position to the target. */
         private void switchHandle(int source, int target) {
+            switchHandle(editorHandles, source, target);
+        }
+
+        /** Moves the handle at the given position to the target. */
+        private static void switchHandle(EditorHandle editorHandles[],
+                                         int          source,
+                                         int          target) {
             if (target != source) {
                 EditorHandle move = editorHandles[target];
                 editorHandles[target] = editorHandles[source];
                 editorHandles[source] = move;
+                editorHandles[target].position = target;
+                move.position = source;
             }
         }
 
-        /** Returns the EditorHandle with the given column. */
+        /** Returns the position of the EditorHandle with the given column. */
         private int getEditorHandle(int column) {
-            int len = editorHandles.length;
-            while (len-- > 0) {
-                if (editorHandles[len].column == column) {
-                    return len;
-                }
-            }
+            EditorHandle handle = (column < columnHandles.length)
+                ? columnHandles[column] : null;
 
-            return len;
+            return (handle == null) ? -1 : handle.position;
         }
 
         @Override public boolean include(RowFilter.Entry entry) {
-        	RowInfo ri = rows.get((Integer) entry.getIdentifier()); 
-            return ri == null? true : ri.is(); //see issue 24 for this change
+            return include((Integer) entry.getIdentifier());
         }
 
         public boolean include(int row) {
-            return rows.get(row).is();
+            // rows not yet known are included, see issue 24
+            return (row >= rowCount) || passing.get(row);
         }
 
 
+        /**
+         * Extraction of choices on a background thread, see {@link
+         * FilterSettings#backgroundChoices}.<br>
+         * It works on copies of the filter bitmaps and of the editor handles,
+         * and reads the model values from a snapshot of the model, see {@link
+         * ISnapshotTableModel}; handles with custom choices are never
+         * extracted in background. As any table or filter change increases
+         * the generation counter, an outdated extraction is cancelled, and its
+         * result discarded.
+         */
+        class BackgroundExtraction implements Runnable {
+
+            /** The generation of the support when the extraction started. */
+            private int started = generation;
+
+            /** Copies of the handles to update. */
+            private EditorHandle handles[];
+
+            /** The number of handles requiring iteration (the first ones). */
+            private int iterate;
+
+            /** The filter bitmaps, as defined when the extraction started. */
+            private RowBitmap bitmaps[];
+
+            /** The rows to iterate. */
+            private int rows = rowCount;
+
+            /** Entry used to read the model values, from a snapshot. */
+            private RowEntry entry;
+
+            /**
+             * Constructor.
+             *
+             * @param  shared  an extraction started on the same generation,
+             *                 run before on the same thread, whose snapshot
+             *                 and bitmaps are reused; null to create them
+             */
+            BackgroundExtraction(EditorHandle         handles[],
+                                 int                  iterate,
+                                 BackgroundExtraction shared) {
+                this.handles = handles;
+                this.iterate = iterate;
+                if (shared == null) {
+                    bitmaps = getBitmaps(true);
+                    entry = new RowEntry(rowEntry,
+                            ((ISnapshotTableModel) rowEntry.getModel())
+                                .getSnapshot());
+                } else {
+                    bitmaps = shared.bitmaps;
+                    entry = shared.entry;
+                }
+            }
+
+            /** Returns true if the extraction is outdated. */
+            public boolean isCancelled() {
+                return started != generation;
+            }
+
+            @Override public void run() {
+                if (isCancelled()) {
+                    return;
+                }
+
+                try {
+                    iterateRows(handles, iterate, bitmaps, entry, 0, rows - 1,
+                        this, true);
+                } catch (RuntimeException ex) {
+                    // the model could be changing while being read
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    throw ex;
+                }
+
+                if (!isCancelled()) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                            @Override public void run() {
+                                completed();
+                            }
+                        });
+                }
+            }
+
+            /** Sets the extracted choices, invoked on the EDT. */
+            void completed() {
+                if (!isCancelled()) {
+                    for (EditorHandle handle : handles) {
+                        // handles deferred meanwhile are no longer pending
+                        EditorHandle original = columnHandles[handle.column];
+                        if (original.pending) {
+                            original.pending = false;
+                            handle.iterationCompleted(true);
+                        }
+                    }
+                }
+            }
+        }
+
         /**
          * Helper class to handle an editor. It is very associated to the
          * algorithm used in {@link AdaptiveChoicesSupport#extractChoices(int,
@@ -509,6 +1332,9 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             /** the model position of the associated editor. */
             int column;
 
+            /** The position of this handle in its editorHandles array. */
+            int position;
+
             /** The associated FilterEditor. */
             FilterEditor editor;
             
@@ -530,6 +1356,24 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
             /** The choices that will be set on the editor. */
             private Set choices = new HashSet();
 
+            /**
+             * For editors without limit of choices, the counter of the
+             * choices, maintained incrementally.<br>
+             * Editors with a bounded number of choices (enums, booleans) are
+             * instead fully iterated, as the iteration finishes usually after
+             * a few rows.
+             */
+            ChoicesCounter counter;
+
+            /** Set if the handle is waiting for a background extraction. */
+            boolean pending;
+
+            /** For copies iterating a chunk of rows, the original handle. */
+            EditorHandle parent;
+
+            /** Set when any chunk completes the choices of this handle. */
+            volatile boolean completed;
+
             /** Single constructor. */
             public EditorHandle(FilterEditor editor, TableModel model) {
                 this.editor = editor;
@@ -537,6 +1381,45 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
                 init(model);
             }
 
+            /** Constructor used for copies. */
+            private EditorHandle() {
+            }
+
+            /** Returns a copy of this handle, for a separate iteration. */
+            public EditorHandle copy() {
+                EditorHandle ret = new EditorHandle();
+                ret.column = column;
+                ret.editor = editor;
+                ret.autoOptions = autoOptions;
+                ret.maxChoices = maxChoices;
+                ret.customChoices = customChoices;
+                return ret;
+            }
+
+            /**
+             * Returns a copy of this handle, already in iteration, to handle
+             * a chunk of rows. It must have no custom choices.
+             */
+            public EditorHandle copyForChunk() {
+                EditorHandle ret = copy();
+                ret.parent = this;
+                ret.maxIterationChoices = maxIterationChoices;
+                ret.missingChoices = Collections.EMPTY_MAP;
+                return ret;
+            }
+
+            /** Returns true if no further iteration steps are required. */
+            public boolean isCompleted() {
+                return (parent != null) && parent.completed;
+            }
+
+            /** Reports that no further iteration steps are required. */
+            public void setCompleted() {
+                if (parent != null) {
+                    parent.completed = true;
+                }
+            }
+
             /** Updates the formatter associated to this editor. */
             public void updateFormatter(TableModel model, Format formatters[]) {
                 formatters[column] = editor.getFormat();
@@ -571,6 +1454,7 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
                 }
 
             	autoOptions = maxChoices > 0;
+                counter = null;
                 if (choices.isEmpty()) {
                     customChoices = null;
                 } else {
@@ -585,6 +1469,35 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
                 }
             }
 
+            /**
+             * Returns the counter of the handle, if its choices are being
+             * counted.
+             */
+            public ChoicesCounter getCounter() {
+                if ((counter != null) && !editor.isEnabled()) {
+                    counter = null;
+                }
+
+                return counter;
+            }
+
+            /** Discards the counter; it is rebuilt on the next iteration. */
+            public void dropCounter() {
+                counter = null;
+            }
+
+            /** Returns true if the counter must be (re)built. */
+            public boolean requiresCounter() {
+                return (counter == null) && (maxChoices == Integer.MAX_VALUE)
+                        && editor.isEnabled();
+            }
+
+            /** Creates a new, empty, counter. */
+            public ChoicesCounter createCounter() {
+                counter = new ChoicesCounter(column, customChoices);
+                return counter;
+            }
+
             /**
              * Starts an iteration in {@link
              * AdaptiveChoicesSupport#extractChoices(int, int, int)}.
@@ -597,6 +1510,11 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
              */
             public boolean startIteration(boolean fullMode) {
                 if (!editor.isEnabled()) { // do nothing if not enabled
+                    counter = null;
+                    return true;
+                }
+
+                if (counter != null) { // choices are already counted
                     return true;
                 }
 
@@ -646,7 +1564,9 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
              */
             public void iterationCompleted(boolean fullMode) {
                 if (editor.isEnabled()) {
-                    if (fullMode) {
+                    if (counter != null) {
+                        counter.flush(editor);
+                    } else if (fullMode) {
                         editor.setChoices(choices);
                     } else {
                         editor.addChoices(choices);
@@ -656,83 +1576,411 @@ class AdaptiveChoicesHandler extends ChoicesHandler {
         }
 
         /**
-         * Class to hold the filter information on a single row.<br>
-         * This information is a bit per column, defining whether the column is
-         * filtered out or not
+         * Reference counted multiset of the choices of an editor, considering
+         * the rows that pass all the filters but the editor's one.<br>
+         * A value (or custom choice) is added to the editor as soon as its
+         * count becomes positive, and removed when it gets back to zero, so
+         * that each change requires only handling the affected rows.<br>
+         * Each distinct value in the editor's column is given an identifier
+         * when the row is read, and the identifier of each row is kept: table
+         * model events are received once the model has already changed, and
+         * counting a row becomes a simple array access.
          */
-        static class RowInfo {
-            static final byte SET = (byte) 255;
-            byte info[];
+        static class ChoicesCounter {
+
+            /** The model position of the associated editor. */
+            private int column;
+
+            /** The identifier of each distinct value. */
+            private Map<Object, Integer> ids = new HashMap<Object, Integer>();
+
+            /** The value associated to each identifier. */
+            private Object values[] = new Object[16];
+
+            /** The number of rows with each value. */
+            private int references[] = new int[16];
+
+            /** The number of rows counted for each value. */
+            private int counts[] = new int[16];
+
+            /** The identifiers no longer in use (up to freeIds). */
+            private int free[] = new int[16];
+            private int freeIds;
+
+            /** The number of identifiers ever used. */
+            private int usedIds;
+
+            /** The value identifier of each row. */
+            private int rows[] = new int[16];
+
+            /** The number of rows. */
+            private int size;
+
+            /** The custom choices, with their filters. */
+            private CustomChoice custom[];
+            private RowFilter customFilters[];
+
+            /** The rows matching each custom choice. */
+            private RowBitmap customRows[];
+
+            /** The number of rows counted for each custom choice. */
+            private int customCounts[];
 
-            RowInfo(int columns) {
-                int length = 1 + (columns >> 3);
-                this.info = new byte[length];
-                while (length-- > 0) {
-                    this.info[length] = SET;
+            /** The choices added since the last flush. */
+            private Set added = new HashSet();
+
+            /** Set if the editor requires setting all its choices. */
+            private boolean reset = true;
+
+            ChoicesCounter(int column, Map<CustomChoice, RowFilter> choices) {
+                this.column = column;
+
+                int len = (choices == null) ? 0 : choices.size();
+                custom = new CustomChoice[len];
+                customFilters = new RowFilter[len];
+                customRows = new RowBitmap[len];
+                customCounts = new int[len];
+                if (len > 0) {
+                    for (Map.Entry<CustomChoice, RowFilter> entry
+                            : choices.entrySet()) {
+                        custom[--len] = entry.getKey();
+                        customFilters[len] = entry.getValue();
+                        customRows[len] = new RowBitmap();
+                    }
                 }
             }
 
-            /** returns true if all the bits are set to 1. */
-            public boolean is() {
-                int length = info.length;
-                while (length-- > 0) {
-                    if (info[length] != SET) {
-                        return false;
+            /** Reads the given number of new rows, not yet counted. */
+            public void rowsInserted(int row, int count, RowEntry entry) {
+                int newSize = size + count;
+                if (newSize > rows.length) {
+                    rows = grow(rows, newSize, size);
+                }
+
+                System.arraycopy(rows, row, rows, row + count, size - row);
+                size = newSize;
+                for (RowBitmap bitmap : customRows) {
+                    bitmap.insert(row, count, false);
+                }
+
+                read(row, row + count - 1, entry);
+            }
+
+            /** Rereads the given rows, which must be currently not counted. */
+            public void rowsUpdated(int firstRow, int lastRow, RowEntry entry) {
+                for (int r = firstRow; r <= lastRow; r++) {
+                    release(rows[r]);
+                }
+
+                read(firstRow, lastRow, entry);
+            }
+
+            /** Removes rows, which must be currently not counted. */
+            public void rowsRemoved(int row, int count) {
+                int tail = row + count;
+                for (int r = row; r < tail; r++) {
+                    release(rows[r]);
+                }
+
+                System.arraycopy(rows, tail, rows, row, size - tail);
+                size -= count;
+                for (RowBitmap bitmap : customRows) {
+                    bitmap.remove(row, count);
+                }
+            }
+
+            /** Adds or removes the contents of the given row to the counts. */
+            public void count(int row, boolean add) {
+                int id = rows[row];
+                if (add) {
+                    if (counts[id]++ == 0) {
+                        added.add(values[id]);
                     }
+                } else if (--counts[id] == 0) {
+                    reset = true;
                 }
 
-                return true;
+                for (int i = custom.length - 1; i >= 0; i--) {
+                    if (customRows[i].get(row)) {
+                        if (add) {
+                            if (customCounts[i]++ == 0) {
+                                added.add(custom[i]);
+                            }
+                        } else if (--customCounts[i] == 0) {
+                            reset = true;
+                        }
+                    }
+                }
             }
 
+            /** Propagates to the editor the changes since the last flush. */
+            public void flush(FilterEditor editor) {
+                if (reset) {
+                    Set choices = new HashSet();
+                    for (int id = 0; id < usedIds; id++) {
+                        if (counts[id] > 0) {
+                            choices.add(values[id]);
+                        }
+                    }
+
+                    for (int i = custom.length - 1; i >= 0; i--) {
+                        if (customCounts[i] > 0) {
+                            choices.add(custom[i]);
+                        }
+                    }
+
+                    editor.setChoices(choices);
+                    reset = false;
+                } else if (!added.isEmpty()) {
+                    editor.addChoices(added);
+                }
+
+                added.clear();
+            }
+
+            /** Reads the value identifier and custom choices of the rows. */
+            private void read(int firstRow, int lastRow, RowEntry entry) {
+                for (int r = firstRow; r <= lastRow; r++) {
+                    entry.row = r;
+                    rows[r] = acquire(entry.getValue(column));
+                    for (int i = customFilters.length - 1; i >= 0; i--) {
+                        customRows[i].set(r, customFilters[i].include(entry));
+                    }
+                }
+            }
+
+            /** Returns the identifier of the value, adding a reference. */
+            private int acquire(Object value) {
+                Integer id = ids.get(value);
+                int ret;
+                if (id != null) {
+                    ret = id;
+                } else {
+                    if (freeIds > 0) {
+                        ret = free[--freeIds];
+                    } else {
+                        ret = usedIds++;
+                        if (ret == values.length) {
+                            int len = 2 * ret;
+                            Object grow[] = new Object[len];
+                            System.arraycopy(values, 0, grow, 0, ret);
+                            values = grow;
+                            references = grow(references, len, ret);
+                            counts = grow(counts, len, ret);
+                            free = grow(free, len, freeIds);
+                        }
+                    }
+
+                    values[ret] = value;
+                    ids.put(value, ret);
+                }
+
+                ++references[ret];
+                return ret;
+            }
+
+            /** Removes a reference to the given value identifier. */
+            private void release(int id) {
+                if (--references[id] == 0) {
+                    ids.remove(values[id]);
+                    values[id] = null;
+                    free[freeIds++] = id;
+                }
+            }
+
+            /** Returns a larger copy of the given array. */
+            private static int[] grow(int array[], int length, int copy) {
+                int ret[] = new int[Math.max(length, 2 * array.length)];
+                System.arraycopy(array, 0, ret, 0, copy);
+                return ret;
+            }
+        }
+
+        /**
+         * Class to hold the filter information on the rows.<br>
+         * This information is a bit per row and column, defining whether the
+         * row is filtered out or not; it is stored as a bitmap per column.
+         */
+        static class RowInfo {
+
             /** Defines a column in the RowInfo, associated to a filter. */
             static class Filter {
-                private int col;
-                private int bit;
                 int column;
                 IFilter filter;
 
+                /** The rows that pass this filter. */
+                RowBitmap rows = new RowBitmap();
+
+                /**
+                 * The rows passing the filter for the last evaluated editor
+                 * expressions, most recent first.
+                 */
+                private LinkedList<Result> results;
+
                 Filter(IFilter filter, int column) {
                     this.column = column;
                     this.filter = filter;
-                    col = column >> 3;
-                    bit = 1 << (column & 7);
                 }
 
-                public boolean include(RowFilter.Entry rowEntry) {
-                    return !filter.isEnabled() || filter.include(rowEntry);
+                /** Returns the rows cached for the given expression. */
+                public RowBitmap getResult(Object expression) {
+                    if (results != null) {
+                        for (Result result : results) {
+                            if (expression.equals(result.expression)) {
+                                return result.rows;
+                            }
+                        }
+                    }
+
+                    return null;
                 }
 
                 /**
-                 * Sets or unsets the given row.
-                 *
-                 * @return  true if it implies a change
+                 * Returns the rows cached for an expression that the given
+                 * one narrows, choosing the one with less rows.
                  */
-                public boolean set(RowInfo row, boolean set) {
-                    byte info[] = row.info;
-                    byte now = info[col];
-                    if (set) {
-                        info[col] |= bit;
+                public RowBitmap getNarrowedResult(FilterEditor editor,
+                                                   Object       expression) {
+                    RowBitmap ret = null;
+                    if (results != null) {
+                        int min = Integer.MAX_VALUE;
+                        for (Result result : results) {
+                            if (editor.isNarrowing(expression,
+                                        result.expression)) {
+                                int count = result.rows.cardinality();
+                                if (count < min) {
+                                    min = count;
+                                    ret = result.rows;
+                                }
+                            }
+                        }
+                    }
+
+                    return ret;
+                }
+
+                /** Caches the rows passing the filter for the expression. */
+                public void addResult(Object expression, RowBitmap rows) {
+                    if (results == null) {
+                        results = new LinkedList<Result>();
                     } else {
-                        info[col] &= (SET ^ bit);
+                        Iterator<Result> it = results.iterator();
+                        while (it.hasNext()) {
+                            if (expression.equals(it.next().expression)) {
+                                it.remove();
+                            }
+                        }
+
+                        if (results.size() == MAX_RESULTS) {
+                            results.removeLast();
+                        }
                     }
 
-                    return now != info[col];
+                    results.addFirst(new Result(expression, rows.copy()));
                 }
 
-                /**
-                 * returns true if all the bits in the row, with the possible
-                 * exception of THIS column, are set to 1.
-                 */
-                public boolean is(RowInfo row) {
-                    byte info[] = row.info;
-                    boolean now = 0 != (info[col] & bit);
-                    set(row, true);
+                /** Discards all the cached results. */
+                public void clearResults() {
+                    results = null;
+                }
+
+                public boolean include(RowFilter.Entry rowEntry) {
+                    return !filter.isEnabled() || filter.include(rowEntry);
+                }
+
+                /** Number of expressions cached per filter. */
+                private static final int MAX_RESULTS = 16;
 
-                    boolean ret = row.is();
-                    set(row, now);
+                /** Rows passing the filter for a given expression. */
+                private static class Result {
+                    Object expression;
+                    RowBitmap rows;
+
+                    Result(Object expression, RowBitmap rows) {
+                        this.expression = expression;
+                        this.rows = rows;
+                    }
+                }
+            }
+
+            /**
+             * The number of failing filters on each row, so that checking if
+             * a row passes all the filters but one is a constant operation.
+             * <br>
+             * It is stored as bytes if there are less than 256 filters.
+             */
+            static class Failures {
+                private byte bytes[];
+                private short shorts[];
+                private int size;
+
+                Failures(int filters) {
+                    if (filters < 256) {
+                        bytes = new byte[16];
+                    } else {
+                        shorts = new short[16];
+                    }
+                }
+
+                /** Returns the number of failing filters on the row. */
+                public int get(int row) {
+                    return (bytes != null) ? (bytes[row] & 0xff) : shorts[row];
+                }
+
+                /** Updates the failing filters on the row, returning them. */
+                public int add(int row, int delta) {
+                    int ret = get(row) + delta;
+                    if (bytes != null) {
+                        bytes[row] = (byte) ret;
+                    } else {
+                        shorts[row] = (short) ret;
+                    }
 
                     return ret;
                 }
+
+                /** Inserts count rows, without failing filters. */
+                public void insert(int row, int count) {
+                    int newSize = size + count;
+                    if (bytes != null) {
+                        if (newSize > bytes.length) {
+                            byte grow[] = new byte[Math.max(newSize,
+                                        2 * bytes.length)];
+                            System.arraycopy(bytes, 0, grow, 0, size);
+                            bytes = grow;
+                        }
+
+                        System.arraycopy(bytes, row, bytes, row + count,
+                            size - row);
+                        Arrays.fill(bytes, row, row + count, (byte) 0);
+                    } else {
+                        if (newSize > shorts.length) {
+                            short grow[] = new short[Math.max(newSize,
+                                        2 * shorts.length)];
+                            System.arraycopy(shorts, 0, grow, 0, size);
+                            shorts = grow;
+                        }
+
+                        System.arraycopy(shorts, row, shorts, row + count,
+                            size - row);
+                        Arrays.fill(shorts, row, row + count, (short) 0);
+                    }
+
+                    size = newSize;
+                }
+
+                /** Removes count rows. */
+                public void remove(int row, int count) {
+                    int tail = row + count;
+                    System.arraycopy((bytes != null) ? bytes : shorts, tail,
+                        (bytes != null) ? bytes : shorts, row, size - tail);
+                    size -= count;
+                }
+
+                /** Removes all the rows. */
+                public void clear() {
+                    size = 0;
+                }
             }
         }
 
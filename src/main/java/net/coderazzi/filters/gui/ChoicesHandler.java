@@ -27,6 +27,12 @@ package net.coderazzi.filters.gui;
 
 import java.text.Format;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.JTable;
 import javax.swing.RowFilter;
 import javax.swing.SwingUtilities;
@@ -52,6 +58,12 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
     /** this variable is true to signal an update to the FiltersHandler. */
     private boolean runScheduled;
 
+    /** The executor for background tasks, shared by all tables. */
+    private static ExecutorService backgroundExecutor;
+
+    /** The executor for parallel tasks, shared by all tables. */
+    private static ExecutorService parallelExecutor;
+
     protected ChoicesHandler(FiltersHandler handler) {
         this.handler = handler;
     }
@@ -59,6 +71,32 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
     /** Returns the {@link RowFilter} associated to this handler. */
     public abstract RowFilter getRowFilter();
 
+    /**
+     * Returns the model rows whose filtering status has changed since the
+     * last call, or null if not known (any row could have changed).<br>
+     * It only applies while the {@link RowFilter} remains the same.
+     */
+    public RowBitmap consumeChangedRows() {
+        return null;
+    }
+
+    /**
+     * Starts evaluating the {@link RowFilter} on a background thread, if
+     * supported and required, returning true in such case: the table filter
+     * is then updated again once the evaluation completes.
+     */
+    public boolean startBackgroundFiltering() {
+        return false;
+    }
+
+    /**
+     * Evaluates the filters on the rows whose verdict is unknown, using
+     * several threads, if supported and required; it is invoked before the
+     * filter is applied on the table.
+     */
+    public void evaluateInParallel() {
+    }
+
     /**
      * Sets/unsets the handler on interrupt mode<br>
      * On interrupt mode, the associated {@link FiltersHandler} is likely to
@@ -69,6 +107,12 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
     /** Reports a {@link FilterEditor} update. */
     public abstract void editorUpdated(FilterEditor editor);
 
+    /**
+     * Computes the choices of a {@link FilterEditor}, previously deferred as
+     * they were not needed.
+     */
+    public abstract void choicesRequested(FilterEditor editor);
+
     /**
      * Reports a {@link IFilter} update.
      *
@@ -105,7 +149,16 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
         if (firstRow != TableModelEvent.HEADER_ROW) {
             int type = e.getType();
             TableModel model = (TableModel) e.getSource();
-            tableUpdated(model, type, firstRow, e.getLastRow(), e.getColumn());
+            int lastRow = e.getLastRow();
+            int column = e.getColumn();
+            for (FilterEditor editor : handler.getEditors()) {
+                if ((column == TableModelEvent.ALL_COLUMNS)
+                        || (column == editor.getModelIndex())) {
+                    editor.tableUpdated(type, firstRow, lastRow);
+                }
+            }
+
+            tableUpdated(model, type, firstRow, lastRow, column);
             if (!runScheduled) {
                 runScheduled = true;
                 // invoke later filtersHandler.tableUpdated, as perhaps the
@@ -121,6 +174,13 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
         handler.tableUpdated();
     }
 
+    /** Returns true if the table model events are being received. */
+    protected boolean isTableModelEventsEnabled() {
+        JTable table = handler.getTable();
+
+        return (table != null) && (listenedModel == table.getModel());
+    }
+
     /**
      * Sets whether to send table model events to the {@link ChoicesHandler}.
      */
@@ -138,6 +198,11 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
 
                 listenedModel = table.getModel();
                 listenedModel.addTableModelListener(this);
+                // changes could have been missed while not listening
+                for (FilterEditor editor : handler.getEditors()) {
+                    editor.tableUpdated(TableModelEvent.UPDATE, 0,
+                        Integer.MAX_VALUE);
+                }
             }
         } else if (listenedModel != null) {
             listenedModel.removeTableModelListener(this);
@@ -145,6 +210,48 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
         }
     }
 
+    /**
+     * Returns the executor for background tasks -choices extraction or
+     * filters evaluation-, run one at a time.
+     */
+    protected static synchronized ExecutorService getBackgroundExecutor() {
+        if (backgroundExecutor == null) {
+            backgroundExecutor = createExecutor("TableFilter background", 1);
+        }
+
+        return backgroundExecutor;
+    }
+
+    /** Returns the executor for tasks split over several threads. */
+    protected static synchronized ExecutorService getParallelExecutor() {
+        if (parallelExecutor == null) {
+            parallelExecutor = createExecutor("TableFilter parallel",
+                    Math.max(1, FilterSettings.parallelThreads));
+        }
+
+        return parallelExecutor;
+    }
+
+    /**
+     * Creates an executor with the given number of daemon threads, which
+     * are released when idle.
+     */
+    private static ExecutorService createExecutor(final String name,
+                                                  int          threads) {
+        ThreadPoolExecutor ret = new ThreadPoolExecutor(threads, threads, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        ret.allowCoreThreadTimeOut(true);
+
+        return ret;
+    }
+
     /**
      * Basic RowFilter.Entry instance, used internally to handle the RowFilter
      * default filtering.
@@ -166,6 +273,21 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
             }
         }
 
+        /** Creates an entry sharing the model and formatters of another. */
+        public RowEntry(RowEntry entry) {
+            this(entry, entry.model);
+        }
+
+        /**
+         * Creates an entry sharing the formatters of another, reading the
+         * given model, which has the same columns.
+         */
+        public RowEntry(RowEntry entry, TableModel model) {
+            this.model = model;
+            this.count = entry.count;
+            this.formatters = entry.formatters;
+        }
+
         public int getModelRowCount() {
             return model.getRowCount();
         }
@@ -192,7 +314,13 @@ abstract class ChoicesHandler implements TableModelListener, Runnable {
 
         @Override public String getStringValue(int index) {
         	Format f = formatters[index];
-            return f == null ? "" : f.format(getValue(index));
+            if (f == null) {
+                return "";
+            }
+            // formatters are shared by the entries used on parallel threads
+            synchronized (f) {
+                return f.format(getValue(index));
+            }
         }
     }
 
@@ -108,7 +108,16 @@ public abstract class CustomChoice implements Serializable {
                     }
 
                     Format fmt = editor.getFormat();
-                    String s = (fmt == null) ? o.toString() : fmt.format(o);
+                    String s;
+                    if (fmt == null) {
+                        s = o.toString();
+                    } else {
+                        // the format can be used from several threads
+                        synchronized (fmt) {
+                            s = fmt.format(o);
+                        }
+                    }
+
                     return (s == null) || (s.trim().length() == 0);
                 }
             };
@@ -173,8 +182,15 @@ public abstract class CustomChoice implements Serializable {
                             	return false;
                             }
                             Format fmt = ed.getFormat();
-                            String s = (fmt == null) ? o.toString() :
-                            	fmt.format(o);
+                            String s;
+                            if (fmt == null) {
+                                s = o.toString();
+                            } else {
+                                synchronized (fmt) {
+                                    s = fmt.format(o);
+                                }
+                            }
+
                             return pattern.matcher(s).matches();
                         }
                     };
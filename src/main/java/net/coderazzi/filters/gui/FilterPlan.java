@@ -0,0 +1,507 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+
+import net.coderazzi.filters.AndFilter;
+import net.coderazzi.filters.ComposedFilter;
+import net.coderazzi.filters.ComposedFilter.FilterStatistics;
+import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.NotFilter;
+import net.coderazzi.filters.OrFilter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+import net.coderazzi.filters.internal.EvaluationOrder;
+
+
+/**
+ * Compiled form of the enabled filters of a {@link FiltersHandler}, used to
+ * evaluate each row without walking the filter objects.<br>
+ * The tree of AND, OR and NOT filters -including the filters of the
+ * editors- is flattened into arrays of nodes, whose leaves are the row
+ * filters proper: nested compositions of the same type are merged, double
+ * negations removed, and compositions with a constant result simplified.
+ * <br>
+ * As in {@link ComposedFilter}, the children of each composition are
+ * periodically reordered by their expected cost to decide its result. The
+ * statistics are those of the composed filters, which are updated by the
+ * plan: the initial order of each composition follows their last ranks, so
+ * the order learned survives the next compilation. A composition merged in
+ * its parent gathers no statistics of its own.<br>
+ * The statistics and the reordering are only handled on the thread that
+ * compiled the plan, if it is the event dispatch thread.<br>
+ * A plan must be compiled again after any filter change; it can be shared
+ * by several threads, each evaluating the rows through its own {@link
+ * PlanEntry}. The other threads use the compiled order, which never
+ * changes.
+ */
+final class FilterPlan {
+
+    private static final int TRUE = 0;
+    private static final int FALSE = 1;
+    private static final int LEAF = 2;
+    private static final int AND = 3;
+    private static final int OR = 4;
+    private static final int NOT = 5;
+
+    /** Sorts the nodes by the rank of their statistics. */
+    private static final Comparator<Node> RANK_ORDER = new Comparator<Node>() {
+            @Override public int compare(Node o1, Node o2) {
+                return Double.compare(o1.stats.getRank(),
+                        o2.stats.getRank());
+            }
+        };
+
+    /** The kind of each node; the root is the first node. */
+    private int kinds[];
+
+    /** The filter of each LEAF node. */
+    private RowFilter leaves[];
+
+    /** The children of each composition (AND, OR, NOT), as compiled. */
+    private int children[][];
+
+    /** The children of each composition, in the owner's current order. */
+    private int order[][];
+
+    /**
+     * The thread that compiled the plan, the only one reordering it; null if
+     * it is not the event dispatch thread.
+     */
+    private final Thread owner;
+
+    /** Evaluations of each composition since its last reordering. */
+    private int periods[];
+
+    /** Statistics of each node, as evaluated by its composition. */
+    private EvaluationOrder.Statistics stats[];
+
+    /** Number of nodes already emitted, while compiling. */
+    private int size;
+
+    /** Number of columns in the model when the plan was compiled. */
+    private int columns;
+
+    private FilterPlan(int nodes) {
+        kinds = new int[nodes];
+        leaves = new RowFilter[nodes];
+        children = new int[nodes][];
+        periods = new int[nodes];
+        stats = new EvaluationOrder.Statistics[nodes];
+        EvaluationOrder.captureStatisticsThread();
+        owner = EvaluationOrder.isStatisticsThread() ? Thread.currentThread()
+                                                     : null;
+    }
+
+    /**
+     * Compiles the enabled filters of the handler; the editors map associates
+     * the filters of the editors to their editors.
+     */
+    public static FilterPlan compile(FiltersHandler             handler,
+                                     Map<IFilter, FilterEditor> editors) {
+        Node root = composition(AND, handler, editors);
+        FilterPlan ret = new FilterPlan(root.count());
+        ret.emit(root);
+        ret.order = ret.children.clone();
+
+        JTable table = handler.getTable();
+        if (table != null) {
+            ret.columns = table.getModel().getColumnCount();
+        }
+
+        return ret;
+    }
+
+    /** Creates an entry to evaluate this plan, on a single thread. */
+    public PlanEntry createEntry() {
+        return new PlanEntry(columns);
+    }
+
+    /** Returns true if the row of the given entry passes the filters. */
+    public boolean include(PlanEntry entry) {
+        return evaluate(0, entry, Thread.currentThread() == owner);
+    }
+
+    /**
+     * Evaluates the given node.
+     *
+     * @param  owned  true if evaluated on the owner thread
+     */
+    private boolean evaluate(int node, RowFilter.Entry entry, boolean owned) {
+        switch (kinds[node]) {
+
+        case LEAF:
+            return leaves[node].include(entry);
+
+        case AND:
+            return owned ? !decide(node, entry, false)
+                         : !decideInOrder(node, entry, false);
+
+        case OR:
+            return owned ? decide(node, entry, true)
+                         : decideInOrder(node, entry, true);
+
+        case NOT:
+            return !evaluate(children[node][0], entry, owned);
+
+        default:
+            return kinds[node] == TRUE;
+        }
+    }
+
+    /**
+     * Evaluates the children of the composition, in the compiled order,
+     * until one returns the decisive value; no statistics are gathered.
+     *
+     * @return  true if any child returned the decisive value
+     */
+    private boolean decideInOrder(int             node,
+                                  RowFilter.Entry entry,
+                                  boolean         decisive) {
+        for (int child : children[node]) {
+            if (evaluate(child, entry, false) == decisive) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Evaluates the children of the composition, in the current order, until
+     * one returns the decisive value; only called on the owner thread.
+     *
+     * @return  true if any child returned the decisive value
+     */
+    private boolean decide(int node, RowFilter.Entry entry, boolean decisive) {
+        int current[] = order[node];
+        boolean sample = (periods[node] & EvaluationOrder.SAMPLE_MASK) == 0;
+        if (++periods[node] == EvaluationOrder.REORDER_PERIOD) {
+            periods[node] = 0;
+            reorder(node, current);
+        }
+
+        for (int child : current) {
+            boolean include;
+            if (sample) {
+                long start = System.nanoTime();
+                include = evaluate(child, entry, true);
+                stats[child].timed(System.nanoTime() - start);
+            } else {
+                include = evaluate(child, entry, true);
+            }
+
+            stats[child].evaluated(include == decisive);
+            if (include == decisive) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sorts the children of the composition by their expected cost to decide
+     * its result, as in {@link ComposedFilter}. The sort is stable, and the
+     * statistics are then halved.
+     */
+    private void reorder(int node, int current[]) {
+        int len = current.length;
+        int sorted[] = new int[len];
+        double ranks[] = new double[len];
+        for (int i = 0; i < len; i++) {
+            int child = current[i];
+            stats[child].updateRank();
+
+            double rank = stats[child].getRank();
+            int j = i;
+            while ((j > 0) && (ranks[j - 1] > rank)) {
+                ranks[j] = ranks[j - 1];
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+
+            ranks[j] = rank;
+            sorted[j] = child;
+        }
+
+        order[node] = sorted;
+    }
+
+    /** Stores the given node, and its children, returning its position. */
+    private int emit(Node node) {
+        int ret = size++;
+        kinds[ret] = node.kind;
+        leaves[ret] = node.leaf;
+        stats[ret] = node.stats;
+        int len = node.children.size();
+        if (len > 0) {
+            int positions[] = new int[len];
+            for (int i = 0; i < len; i++) {
+                positions[i] = emit(node.children.get(i));
+            }
+
+            children[ret] = positions;
+        }
+
+        return ret;
+    }
+
+    /** Builds the node for the given filter, assumed to be enabled. */
+    private static Node build(Object                     filter,
+                              Map<IFilter, FilterEditor> editors) {
+        // subclasses of the compositions could redefine their semantics
+        Class<?> c = filter.getClass();
+        if (c == AndFilter.class) {
+            return composition(AND, (ComposedFilter) filter, editors);
+        }
+
+        if (c == OrFilter.class) {
+            return composition(OR, (ComposedFilter) filter, editors);
+        }
+
+        if (c == NotFilter.class) {
+            if (!((NotFilter) filter).isEnabled()) {
+                return new Node(TRUE);
+            }
+
+            return composition(AND, (ComposedFilter) filter, editors)
+                    .negate();
+        }
+
+        FilterEditor editor = editors.get(filter);
+        if (editor != null) {
+            RowFilter delegate = editor.getDelegateFilter();
+
+            return (delegate == null) ? new Node(TRUE)
+                                      : build(delegate, editors);
+        }
+
+        Node ret = new Node(LEAF);
+        if (filter instanceof RowFilter) {
+            ret.leaf = (RowFilter) filter;
+        } else {
+            final IFilter iFilter = (IFilter) filter;
+            ret.leaf = new RowFilter() {
+                @Override public boolean include(Entry entry) {
+                    return iFilter.include(entry);
+                }
+            };
+        }
+
+        return ret;
+    }
+
+    /**
+     * Builds the node for the enabled filters of the composition, sorted by
+     * their last rank; each child keeps the statistics of its filter.
+     */
+    private static Node composition(int                        kind,
+                                    ComposedFilter             filter,
+                                    Map<IFilter, FilterEditor> editors) {
+        Node ret = new Node(kind);
+        boolean enabled = false;
+        for (FilterStatistics stats : filter.getStatistics()) {
+            IFilter each = stats.getFilter();
+            if (each.isEnabled()) {
+                Node child = build(each, editors);
+                child.stats = stats;
+                enabled = true;
+                ret.add(child);
+            }
+        }
+
+        Collections.sort(ret.children, RANK_ORDER);
+
+        // without enabled filters, AND and OR compositions include all rows
+        return enabled ? ret.simplify() : new Node(TRUE);
+    }
+
+    /** Node of the filters tree, before being flattened. */
+    private static class Node {
+        int kind;
+        RowFilter leaf;
+        EvaluationOrder.Statistics stats;
+        List<Node> children = new ArrayList<Node>();
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        /** Adds a child, merging it if it is a composition of this type. */
+        void add(Node child) {
+            if (child.kind == kind) {
+                children.addAll(child.children);
+            } else {
+                children.add(child);
+            }
+        }
+
+        /**
+         * Returns the simplified AND / OR composition: constant if any child
+         * decides its result, or if all the children are neutral.
+         */
+        Node simplify() {
+            int neutral = (kind == AND) ? TRUE : FALSE;
+            int decisive = (kind == AND) ? FALSE : TRUE;
+            List<Node> remaining = new ArrayList<Node>();
+            for (Node child : children) {
+                if (child.kind == decisive) {
+                    return child;
+                }
+
+                if (child.kind != neutral) {
+                    remaining.add(child);
+                }
+            }
+
+            if (remaining.isEmpty()) {
+                return new Node(neutral);
+            }
+
+            if (remaining.size() == 1) {
+                return remaining.get(0);
+            }
+
+            children = remaining;
+
+            return this;
+        }
+
+        /** Returns the negation of this node. */
+        Node negate() {
+            switch (kind) {
+
+            case TRUE:
+                return new Node(FALSE);
+
+            case FALSE:
+                return new Node(TRUE);
+
+            case NOT:
+                return children.get(0);
+
+            default:
+                Node ret = new Node(NOT);
+                ret.children.add(this);
+
+                return ret;
+            }
+        }
+
+        /** Returns the number of nodes in this subtree. */
+        int count() {
+            int ret = 1;
+            for (Node child : children) {
+                ret += child.count();
+            }
+
+            return ret;
+        }
+    }
+
+    /**
+     * Entry evaluated by a plan, reading each value of the row at most once
+     * from the entry it wraps; it must be set for each row to evaluate.
+     */
+    static final class PlanEntry extends RowFilter.Entry {
+        private RowFilter.Entry entry;
+        private Object values[];
+        private String strings[];
+        private int valueStamps[];
+        private int stringStamps[];
+        private int stamp;
+
+        /**
+         * Constructor.
+         *
+         * @param  columns  the number of columns whose values are kept, the
+         *                  other values are read each time
+         */
+        PlanEntry(int columns) {
+            values = new Object[columns];
+            strings = new String[columns];
+            valueStamps = new int[columns];
+            stringStamps = new int[columns];
+        }
+
+        /** Sets the wrapped entry, discarding the values already read. */
+        public void setEntry(RowFilter.Entry entry) {
+            this.entry = entry;
+            if (++stamp == 0) {
+                Arrays.fill(valueStamps, 0);
+                Arrays.fill(stringStamps, 0);
+                stamp = 1;
+            }
+        }
+
+        @Override public Object getModel() {
+            return entry.getModel();
+        }
+
+        @Override public int getValueCount() {
+            return entry.getValueCount();
+        }
+
+        @Override public Object getValue(int index) {
+            if (index >= values.length) {
+                return entry.getValue(index);
+            }
+
+            if (valueStamps[index] != stamp) {
+                values[index] = entry.getValue(index);
+                valueStamps[index] = stamp;
+            }
+
+            return values[index];
+        }
+
+        @Override public String getStringValue(int index) {
+            if (index >= strings.length) {
+                return entry.getStringValue(index);
+            }
+
+            if (stringStamps[index] != stamp) {
+                strings[index] = entry.getStringValue(index);
+                stringStamps[index] = stamp;
+            }
+
+            return strings[index];
+        }
+
+        @Override public Object getIdentifier() {
+            return entry.getIdentifier();
+        }
+    }
+}
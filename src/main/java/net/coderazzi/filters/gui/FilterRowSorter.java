@@ -0,0 +1,548 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import java.text.Collator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.RowFilter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+import javax.swing.table.TableStringConverter;
+
+
+/**
+ * <p>{@link TableRowSorter} that reuses the current order of the rows when the
+ * filter is updated.</p>
+ *
+ * <p>A {@link javax.swing.DefaultRowSorter} sorts again all the visible rows
+ * each time that the filter is set. However, if the sort keys and the table
+ * data do not change, the rows that remain visible keep their relative order:
+ * this sorter just drops the rows that are filtered out, and merges into the
+ * current order the rows that become visible, after sorting them. Narrowing
+ * a filter requires therefore no comparisons, and widening it only requires
+ * sorting the new rows.</p>
+ *
+ * <p>The {@link TableFilterHeader} creates this sorter, when the table has no
+ * {@link javax.swing.RowSorter}, if incremental sorting is enabled; its
+ * behaviour is otherwise the same as the {@link TableRowSorter}.</p>
+ *
+ * @see  TableFilterHeader#setIncrementalSorting(boolean)
+ */
+public class FilterRowSorter<M extends TableModel> extends TableRowSorter<M> {
+
+    /** Mapping from view to model, null if not sorted or filtered. */
+    private int viewToModel[];
+
+    /** Mapping from model to view, -1 for rows filtered out. */
+    private int modelToView[];
+
+    /** The sort keys (and their properties) used on the last sort. */
+    private int sortColumns[];
+    private SortOrder sortOrders[];
+    private Comparator sortComparators[];
+    private boolean sortToString[];
+
+    /** Set to false when the rows should be sorted again on updates. */
+    private boolean sorted;
+
+    /**
+     * Set to false if the current order could be inconsistent with the
+     * comparators or the table data.
+     */
+    private boolean orderValid;
+
+    /** Set while the sort keys are being updated. */
+    private boolean sortKeysUpdate;
+
+    private FilterEntry filterEntry;
+
+    /** Creates a sorter without model. */
+    public FilterRowSorter() {
+        this(null);
+    }
+
+    /** Creates a sorter for the given model. */
+    public FilterRowSorter(M model) {
+        super(model);
+    }
+
+    /** {@link javax.swing.DefaultRowSorter} interface. */
+    @Override public void sort() {
+        int last[] = viewToModel;
+        cacheSortKeys();
+        if ((sortColumns.length == 0) && (getRowFilter() == null)) {
+            viewToModel = null;
+            modelToView = null;
+            sorted = orderValid = true;
+            if (last == null) {
+                return;
+            }
+        } else if ((last != null) && sortKeysUpdate) {
+            // the filter has not changed, no need to apply it again
+            setViewToModel(sortRows(last), false);
+            fireRowSorterChanged(last);
+
+            return;
+        } else if ((last != null) && orderValid
+                && (modelToView.length == getModelWrapper().getRowCount())) {
+            updateFilteredRows(null);
+            return;
+        } else {
+            int rows = getModelWrapper().getRowCount();
+            int included[] = new int[rows];
+            int size = 0;
+            for (int i = 0; i < rows; i++) {
+                if (include(i)) {
+                    included[size++] = i;
+                }
+            }
+
+            modelToView = new int[rows];
+            setViewToModel(sortRows(Arrays.copyOf(included, size)), true);
+        }
+
+        sorted = orderValid = true;
+        fireRowSorterChanged((last == null) ? new int[0] : last);
+    }
+
+    /** {@link javax.swing.DefaultRowSorter} interface. */
+    @Override public void setSortKeys(List<? extends SortKey> sortKeys) {
+        sortKeysUpdate = true;
+        try {
+            super.setSortKeys(sortKeys);
+        } finally {
+            sortKeysUpdate = false;
+        }
+    }
+
+    /** {@link javax.swing.DefaultRowSorter} interface. */
+    @Override public void setComparator(int column, Comparator<?> comparator) {
+        super.setComparator(column, comparator);
+        orderValid = false;
+    }
+
+    /** {@link TableRowSorter} interface. */
+    @Override public void setStringConverter(
+            TableStringConverter stringConverter) {
+        super.setStringConverter(stringConverter);
+        orderValid = false;
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public int convertRowIndexToView(int index) {
+        return (modelToView == null) ? super.convertRowIndexToView(index)
+                                     : modelToView[index];
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public int convertRowIndexToModel(int index) {
+        return (viewToModel == null) ? super.convertRowIndexToModel(index)
+                                     : viewToModel[index];
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public int getViewRowCount() {
+        return (viewToModel == null) ? super.getViewRowCount()
+                                     : viewToModel.length;
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public void modelStructureChanged() {
+        viewToModel = null;
+        modelToView = null;
+        orderValid = false;
+        super.modelStructureChanged();
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public void allRowsChanged() {
+        orderValid = false;
+        super.allRowsChanged();
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public void rowsInserted(int firstRow, int endRow) {
+        super.rowsInserted(firstRow, endRow);
+        if (shouldOptimizeChange(firstRow, endRow)) {
+            int last[] = viewToModel;
+            int delta = endRow - firstRow + 1;
+            int added[] = new int[delta];
+            int size = 0;
+            for (int i = firstRow; i <= endRow; i++) {
+                if (include(i)) {
+                    added[size++] = i;
+                }
+            }
+
+            int current[] = new int[last.length];
+            for (int i = last.length - 1; i >= 0; i--) {
+                int row = last[i];
+                current[i] = (row < firstRow) ? row : row + delta;
+            }
+
+            modelToView = new int[getModelWrapper().getRowCount()];
+            setViewToModel(merge(current, sortRows(
+                        Arrays.copyOf(added, size))), true);
+            fireRowSorterChanged(last);
+        }
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public void rowsDeleted(int firstRow, int endRow) {
+        super.rowsDeleted(firstRow, endRow);
+        if (shouldOptimizeChange(firstRow, endRow)) {
+            int last[] = viewToModel;
+            int delta = endRow - firstRow + 1;
+            int current[] = new int[last.length];
+            int size = 0;
+            for (int row : last) {
+                if (row > endRow) {
+                    current[size++] = row - delta;
+                } else if (row < firstRow) {
+                    current[size++] = row;
+                }
+            }
+
+            modelToView = new int[getModelWrapper().getRowCount()];
+            setViewToModel(Arrays.copyOf(current, size), true);
+            fireRowSorterChanged(last);
+        }
+    }
+
+    /** {@link javax.swing.RowSorter} interface. */
+    @Override public void rowsUpdated(int firstRow, int endRow) {
+        super.rowsUpdated(firstRow, endRow);
+        if (!getSortsOnUpdates()) {
+            sorted = orderValid = false;
+        } else if (shouldOptimizeChange(firstRow, endRow)) {
+            int last[] = viewToModel;
+            int updated[] = new int[endRow - firstRow + 1];
+            int size = 0;
+            for (int i = firstRow; i <= endRow; i++) {
+                if (include(i)) {
+                    updated[size++] = i;
+                }
+            }
+
+            int current[] = new int[last.length];
+            int kept = 0;
+            for (int row : last) {
+                if ((row < firstRow) || (row > endRow)) {
+                    current[kept++] = row;
+                }
+            }
+
+            setViewToModel(merge(Arrays.copyOf(current, kept),
+                    sortRows(Arrays.copyOf(updated, size))), true);
+            fireRowSorterChanged(last);
+        }
+    }
+
+    /**
+     * Reports that the filter outcome has changed for the given rows, and
+     * only for them; the table data has not changed.
+     */
+    void filterUpdated(RowBitmap rows) {
+        if ((viewToModel == null) || !orderValid
+                || (modelToView.length != getModelWrapper().getRowCount())) {
+            sort();
+        } else {
+            updateFilteredRows(rows);
+        }
+    }
+
+    /**
+     * Applies the filter again on the given rows (all if null), keeping the
+     * current order for the rows that remain visible.
+     */
+    private void updateFilteredRows(RowBitmap rows) {
+        int last[] = viewToModel;
+        int count = modelToView.length;
+        int added[] = new int[16];
+        int size = 0;
+        int removed = 0;
+        int row = (rows == null) ? 0 : rows.nextSetBit(0);
+        while ((row != -1) && (row < count)) {
+            boolean include = include(row);
+            if (modelToView[row] == -1) {
+                if (include) {
+                    if (size == added.length) {
+                        added = Arrays.copyOf(added, size * 2);
+                    }
+
+                    added[size++] = row;
+                }
+            } else if (!include) {
+                modelToView[row] = -2;
+                removed++;
+            }
+
+            row = (rows == null) ? row + 1 : rows.nextSetBit(row + 1);
+        }
+
+        int current[] = last;
+        if (removed > 0) {
+            current = new int[last.length - removed];
+            int kept = 0;
+            for (int r : last) {
+                if (modelToView[r] != -2) {
+                    current[kept++] = r;
+                }
+            }
+        }
+
+        setViewToModel(merge(current, sortRows(Arrays.copyOf(added, size))),
+            true);
+        sorted = true;
+        fireRowSorterChanged(last);
+    }
+
+    /**
+     * Returns true if the change on the given rows can be handled
+     * incrementally; otherwise, it sorts again all the rows if required.
+     */
+    private boolean shouldOptimizeChange(int firstRow, int endRow) {
+        if (viewToModel == null) {
+            return false;
+        }
+
+        if (!sorted || (viewToModel.length == 0)
+                || ((endRow - firstRow) > (viewToModel.length / 10))) {
+            orderValid = false;
+            sort();
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /** Sets the view to model mapping, updating the model to view one. */
+    private void setViewToModel(int rows[], boolean unsetFirst) {
+        if (unsetFirst) {
+            Arrays.fill(modelToView, -1);
+        }
+
+        for (int i = rows.length - 1; i >= 0; i--) {
+            modelToView[rows[i]] = i;
+        }
+
+        viewToModel = rows;
+    }
+
+    /** Sorts the given rows, returning them in a new array. */
+    private int[] sortRows(int rows[]) {
+        int size = rows.length;
+        if (sortColumns.length == 0) {
+            int ret[] = rows.clone();
+            Arrays.sort(ret);
+
+            return ret;
+        }
+
+        Integer sort[] = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sort[i] = rows[i];
+        }
+
+        Arrays.sort(sort, new Comparator<Integer>() {
+                @Override public int compare(Integer o1, Integer o2) {
+                    return compareRows(o1, o2);
+                }
+            });
+
+        int ret[] = new int[size];
+        for (int i = 0; i < size; i++) {
+            ret[i] = sort[i];
+        }
+
+        return ret;
+    }
+
+    /**
+     * Merges two sorted arrays of rows; the rows to add are located with a
+     * binary search, unless there are too many.
+     */
+    private int[] merge(int current[], int toAdd[]) {
+        if (toAdd.length == 0) {
+            return current;
+        }
+
+        int ret[] = new int[current.length + toAdd.length];
+        int bits = 32 - Integer.numberOfLeadingZeros(current.length);
+        if (((long) toAdd.length * bits) > (current.length + toAdd.length)) {
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while ((i < current.length) && (j < toAdd.length)) {
+                if (compareRows(current[i], toAdd[j]) < 0) {
+                    ret[k++] = current[i++];
+                } else {
+                    ret[k++] = toAdd[j++];
+                }
+            }
+
+            System.arraycopy(current, i, ret, k, current.length - i);
+            System.arraycopy(toAdd, j, ret, k, toAdd.length - j);
+
+            return ret;
+        }
+
+        int last = 0;
+        for (int i = 0; i < toAdd.length; i++) {
+            int row = toAdd[i];
+            int low = last;
+            int high = current.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareRows(current[mid], row) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            System.arraycopy(current, last, ret, last + i, low - last);
+            ret[low + i] = row;
+            last = low;
+        }
+
+        System.arraycopy(current, last, ret, last + toAdd.length,
+            current.length - last);
+
+        return ret;
+    }
+
+    /** Caches the sort keys before a sort. */
+    private void cacheSortKeys() {
+        List<? extends SortKey> keys = getSortKeys();
+        int size = keys.size();
+        if ((size > 0) && (keys.get(0).getSortOrder() == SortOrder.UNSORTED)) {
+            size = 0;
+        }
+
+        sortColumns = new int[size];
+        sortOrders = new SortOrder[size];
+        sortComparators = new Comparator[size];
+        sortToString = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            SortKey key = keys.get(i);
+            int column = key.getColumn();
+            Comparator comparator = getComparator(column);
+            sortColumns[i] = column;
+            sortOrders[i] = key.getSortOrder();
+            sortToString[i] = useToString(column);
+            sortComparators[i] = (comparator == null) ? Collator.getInstance()
+                                                      : comparator;
+        }
+    }
+
+    /** Compares two model rows, as done in the DefaultRowSorter. */
+    @SuppressWarnings("unchecked")
+    private int compareRows(int model1, int model2) {
+        ModelWrapper<M, Integer> model = getModelWrapper();
+        for (int i = 0; i < sortColumns.length; i++) {
+            int result;
+            if (sortOrders[i] == SortOrder.UNSORTED) {
+                result = model1 - model2;
+            } else {
+                int column = sortColumns[i];
+                Object v1, v2;
+                if (sortToString[i]) {
+                    v1 = model.getStringValueAt(model1, column);
+                    v2 = model.getStringValueAt(model2, column);
+                } else {
+                    v1 = model.getValueAt(model1, column);
+                    v2 = model.getValueAt(model2, column);
+                }
+
+                if (v1 == null) {
+                    result = (v2 == null) ? 0 : -1;
+                } else if (v2 == null) {
+                    result = 1;
+                } else {
+                    result = sortComparators[i].compare(v1, v2);
+                }
+
+                if (sortOrders[i] == SortOrder.DESCENDING) {
+                    result *= -1;
+                }
+            }
+
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return model1 - model2;
+    }
+
+    /** Returns true if the given model row passes the filter. */
+    private boolean include(int row) {
+        RowFilter<? super M, ? super Integer> filter = getRowFilter();
+        if (filter == null) {
+            return true;
+        }
+
+        if (filterEntry == null) {
+            filterEntry = new FilterEntry();
+        }
+
+        filterEntry.row = row;
+
+        return filter.include(filterEntry);
+    }
+
+    /** Entry used to invoke the filter on a given row. */
+    private class FilterEntry extends RowFilter.Entry<M, Integer> {
+        int row;
+
+        @Override public M getModel() {
+            return getModelWrapper().getModel();
+        }
+
+        @Override public int getValueCount() {
+            return getModelWrapper().getColumnCount();
+        }
+
+        @Override public Object getValue(int index) {
+            return getModelWrapper().getValueAt(row, index);
+        }
+
+        @Override public String getStringValue(int index) {
+            return getModelWrapper().getStringValueAt(row, index);
+        }
+
+        @Override public Integer getIdentifier() {
+            return getModelWrapper().getIdentifier(row);
+        }
+    }
+}
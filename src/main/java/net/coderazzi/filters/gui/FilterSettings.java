@@ -63,6 +63,17 @@ public class FilterSettings {
     public static boolean autoSelection = Boolean.parseBoolean(getString(
                 "AutoSelection", "true"));
 
+    /**
+     * Whether to extract the adaptive choices on a background thread, false
+     * by default.<br>
+     * It only applies to table models implementing {@link
+     * ISnapshotTableModel}, read in background through their snapshots; the
+     * choices of editors with custom choices are still extracted on the
+     * event dispatch thread.
+     */
+    public static boolean backgroundChoices = Boolean.parseBoolean(getString(
+                "BackgroundChoices", "false"));
+
     /** Header's background color. */
     public static Color backgroundColor = getColor("BackgroundColor", null);
 
@@ -121,6 +132,34 @@ public class FilterSettings {
     public static boolean ignoreCase = Boolean.parseBoolean(getString(
                 "IgnoreCase", "true"));
 
+    /**
+     * Whether to ignore the accents (diacritical marks) when matching
+     * strings, false by default.
+     */
+    public static boolean ignoreAccents = Boolean.parseBoolean(getString(
+                "IgnoreAccents", "false"));
+
+    /**
+     * Whether to resolve comparison operators with a sorted index of the
+     * column values, false by default.
+     */
+    public static boolean rangeIndex = Boolean.parseBoolean(getString(
+                "RangeIndex", "false"));
+
+    /**
+     * Whether to resolve equality operators and single choice selections
+     * with a hash index of the column values, false by default.
+     */
+    public static boolean hashIndex = Boolean.parseBoolean(getString(
+                "HashIndex", "false"));
+
+    /**
+     * Whether to resolve wildcard expressions with an index of the trigrams
+     * of the column strings, false by default.
+     */
+    public static boolean textIndex = Boolean.parseBoolean(getString(
+                "TextIndex", "false"));
+
     /** Whether to enable instant filtering, true by default. */
     public static boolean instantFiltering = Boolean.parseBoolean(getString(
                 "InstantFiltering", "true"));
@@ -129,6 +168,61 @@ public class FilterSettings {
     public static boolean allowInstantVanishing = Boolean.parseBoolean(getString(
             "AllowInstantVanishing", "false"));
 
+    /**
+     * Whether to compute the choices of each editor only when they are
+     * needed (popup displayed, or editor focused for autocompletion), false
+     * by default.
+     */
+    public static boolean lazyChoices = Boolean.parseBoolean(getString(
+                "LazyChoices", "false"));
+
+    /**
+     * Whether the row sorter created by the header -when the table has
+     * none- is a {@link FilterRowSorter}, reusing the current order when the
+     * filter changes, false by default (a {@link
+     * javax.swing.table.TableRowSorter} is created).
+     */
+    public static boolean incrementalSorting = Boolean.parseBoolean(
+            getString("IncrementalSorting", "false"));
+
+    /**
+     * The time, in milliseconds, to coalesce filter updates before they are
+     * applied on the table: 0 applies them once the pending events are
+     * processed, and negative values -the default- apply them immediately.
+     */
+    public static int filterUpdateDelay = getInteger("FilterUpdateDelay", -1);
+
+    /**
+     * Whether to evaluate the filters on a background thread, when the
+     * choices are not adaptive, false by default.<br>
+     * It only applies to table models implementing {@link
+     * ISnapshotTableModel}, read in background through their snapshots; the
+     * filters implementing {@link net.coderazzi.filters.ISequentialFilter}
+     * are still evaluated on the event dispatch thread.
+     */
+    public static boolean backgroundFiltering = Boolean.parseBoolean(
+            getString("BackgroundFiltering", "false"));
+
+    /**
+     * Whether to evaluate the filters on several threads, when the choices
+     * are not adaptive, false by default.<br>
+     * Note that the table model is then read concurrently, and that the
+     * filters must be safe to evaluate concurrently, unless implementing
+     * {@link net.coderazzi.filters.ISequentialFilter}.
+     */
+    public static boolean parallelFiltering = Boolean.parseBoolean(
+            getString("ParallelFiltering", "false"));
+
+    /**
+     * The number of threads used to evaluate the filters or to extract the
+     * choices in parallel, by default the number of available processors.
+     * <br>
+     * It corresponds to the property ParallelThreads, and must be set before
+     * any parallel evaluation starts.
+     */
+    public static int parallelThreads = getInteger("ParallelThreads",
+            Runtime.getRuntime().availableProcessors());
+
     /** The default icon used to represent null/empty values. */
     public static Icon matchEmptyFilterIcon = new ImageIcon(IParser.class
                 .getResource("resources/matchEmptyIcon.png"));
@@ -149,6 +243,19 @@ public class FilterSettings {
     public static int maxVisiblePopupRows = getInteger("Popup.MaxVisibleRows",
             8);
 
+    /**
+     * The minimum number of rows to extract the adaptive choices using
+     * several threads; 0 (the default) disables the parallel extraction.<br>
+     * It corresponds to the property ParallelChoicesThreshold.<br>
+     * Note that the table model is then read concurrently from several
+     * threads: it should be only enabled if the model is safe to read
+     * concurrently, or if it implements {@link ISnapshotTableModel} and
+     * the choices are extracted in background, see {@link
+     * #backgroundChoices}.
+     */
+    public static int parallelChoicesThreshold = getInteger(
+            "ParallelChoicesThreshold", 0);
+
     /**
      * The class defining the generic {@link IParserModel}<br>
      * It must have a default constructor.<br>
@@ -25,17 +25,22 @@
 
 package net.coderazzi.filters.gui;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.DefaultRowSorter;
 import javax.swing.JTable;
 import javax.swing.RowFilter;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.RowSorterEvent;
 import javax.swing.event.RowSorterListener;
 import javax.swing.table.TableRowSorter;
@@ -122,6 +127,33 @@ public class FiltersHandler extends AndFilter
     /** If true, the current filter hides all the rows. */
     private boolean onWarning;
 
+    /**
+     * Maximum number of separate row ranges to update on the sorter, after a
+     * filter change; with more ranges, the filter is fully reapplied.
+     */
+    private static final int MAX_SORTER_UPDATES = 4;
+
+    /** If true, adaptive choices are extracted on a background thread. */
+    private boolean backgroundChoices = FilterSettings.backgroundChoices;
+
+    /** If true, the choices are only computed when needed. */
+    private boolean lazyChoices = FilterSettings.lazyChoices;
+
+    /** If true, the filters are evaluated on a background thread. */
+    private boolean backgroundFiltering = FilterSettings.backgroundFiltering;
+
+    /** If true, the filters are evaluated on several threads. */
+    private boolean parallelFiltering = FilterSettings.parallelFiltering;
+
+    /** Time to coalesce filter updates, negative to apply them at once. */
+    private int filterUpdateDelay = FilterSettings.filterUpdateDelay;
+
+    /** Instance to coalesce the filter updates. */
+    private UpdateScheduler updateScheduler = new UpdateScheduler();
+
+    /** Maximum time to coalesce updates, when adapted to their cost. */
+    private static final int MAX_UPDATE_DELAY = 1000;
+
     /** Only constructor. */
     FiltersHandler(AutoChoices mode, IParserModel parserModel) {
     	
@@ -188,6 +220,21 @@ public class FiltersHandler extends AndFilter
         boolean formatChange = false;
         if (IParserModel.IGNORE_CASE_PROPERTY.equals(evt.getPropertyName())) {
         	target=null;
+        } else if (ParserModel.IGNORE_ACCENTS_PROPERTY.equals(
+                    evt.getPropertyName())
+                || ParserModel.RANGE_INDEX_PROPERTY.equals(
+                    evt.getPropertyName())
+                || ParserModel.HASH_INDEX_PROPERTY.equals(
+                    evt.getPropertyName())
+                || ParserModel.TEXT_INDEX_PROPERTY.equals(
+                    evt.getPropertyName())) {
+            enableNotifications(false);
+            for (FilterEditor editor : editors.values()) {
+                editor.updateParser();
+            }
+
+            enableNotifications(true);
+            return;
         } else {
             if (IParserModel.FORMAT_PROPERTY.equals(evt.getPropertyName())) {
                 formatChange = true;
@@ -295,6 +342,94 @@ public class FiltersHandler extends AndFilter
         return choicesHandler instanceof AdaptiveChoicesHandler;
     }
 
+    /** Sets whether adaptive choices are extracted in background. */
+    public void setBackgroundChoices(boolean enable) {
+        if (enable != backgroundChoices) {
+            // recreates, if needed, the adaptive support
+            enableNotifications(false);
+            backgroundChoices = enable;
+            enableNotifications(true);
+        }
+    }
+
+    /** Returns true if adaptive choices are extracted in background. */
+    public boolean isBackgroundChoices() {
+        return backgroundChoices;
+    }
+
+    /** Sets whether the choices are only computed when needed. */
+    public void setLazyChoices(boolean enable) {
+        if (enable != lazyChoices) {
+            // recreates the choices, computing now any deferred ones
+            enableNotifications(false);
+            lazyChoices = enable;
+            enableNotifications(true);
+        }
+    }
+
+    /** Returns true if the choices are only computed when needed. */
+    public boolean isLazyChoices() {
+        return lazyChoices;
+    }
+
+    /** Sets whether the filters are evaluated in background. */
+    public void setBackgroundFiltering(boolean enable) {
+        if (enable != backgroundFiltering) {
+            // discards any evaluation in progress, and reapplies the filter
+            enableNotifications(false);
+            backgroundFiltering = enable;
+            enableNotifications(true);
+        }
+    }
+
+    /** Returns true if the filters are evaluated in background. */
+    public boolean isBackgroundFiltering() {
+        return backgroundFiltering;
+    }
+
+    /** Sets whether the filters are evaluated on several threads. */
+    public void setParallelFiltering(boolean enable) {
+        if (enable != parallelFiltering) {
+            // discards any evaluation in progress, and reapplies the filter
+            enableNotifications(false);
+            parallelFiltering = enable;
+            enableNotifications(true);
+        }
+    }
+
+    /** Returns true if the filters are evaluated on several threads. */
+    public boolean isParallelFiltering() {
+        return parallelFiltering;
+    }
+
+    /** Sets whether the header creates a {@link FilterRowSorter}. */
+    public void setIncrementalSorting(boolean enable) {
+        autoSelector.setIncrementalSorting(enable);
+    }
+
+    /** Returns true if the header creates a {@link FilterRowSorter}. */
+    public boolean isIncrementalSorting() {
+        return autoSelector.incrementalSorting;
+    }
+
+    /** Sets the time to coalesce filter updates. */
+    public void setFilterUpdateDelay(int delay) {
+        filterUpdateDelay = delay;
+        if (delay < 0) {
+            flushFilterUpdates();
+        }
+    }
+
+    /** Returns the time to coalesce filter updates. */
+    public int getFilterUpdateDelay() {
+        return filterUpdateDelay;
+    }
+
+    /** Applies any scheduled filter update. */
+    public void flushFilterUpdates() {
+        updateScheduler.run();
+    }
+
     /**
      * <p>Sets the autoselection mode</p>
      *
@@ -352,6 +487,13 @@ public class FiltersHandler extends AndFilter
         }
     }
 
+    /** Computes the choices of an editor, deferred while not needed. */
+    public void requestEditorChoices(FilterEditor editor) {
+        if (editors.containsValue(editor) && isEnabled()) {
+            choicesHandler.choicesRequested(editor);
+        }
+    }
+
     /** {@link ComposedFilter} interface. */
     @Override public void filterUpdated(IFilter filter) {
         boolean wasEnabled = isEnabled();
@@ -398,16 +540,81 @@ public class FiltersHandler extends AndFilter
 
     /** Method to set/update the filtering. */
     public void updateTableFilter() {
+        updateScheduler.cancel();
         pendingNotifications = autoSelector.sorter == null;
         if (!pendingNotifications) {
-            // To reapply the filtering, it is enough to invoke again
-            // setRowFilter.
-            RowFilter rf = isEnabled() ? choicesHandler.getRowFilter() : null;
-            if ((rf != null) || (autoSelector.sorter.getRowFilter() != null)) {
+            long start = System.currentTimeMillis();
+            applyTableFilter();
+            updateScheduler.cost = System.currentTimeMillis() - start;
+        }
+    }
+
+    /** Applies the filter on the table's sorter. */
+    private void applyTableFilter() {
+        // To reapply the filtering, it is enough to invoke again
+        // setRowFilter.
+        RowFilter rf = isEnabled() ? choicesHandler.getRowFilter() : null;
+        if (rf != null) {
+            if (choicesHandler.startBackgroundFiltering()) {
+                // this method is invoked again once the filter is evaluated
+                return;
+            }
+
+            choicesHandler.evaluateInParallel();
+        }
+
+        RowBitmap changedRows = choicesHandler.consumeChangedRows();
+        DefaultRowSorter sorter = autoSelector.sorter;
+        if ((rf != null) && (rf == sorter.getRowFilter())
+                && (changedRows != null)) {
+            // the filter is only to reapply on the changed rows;
+            // if there are none, the warning state cannot change
+            if (changedRows.isEmpty()) {
+                return;
+            }
+
+            updateSorterRows(rf, changedRows);
+        } else if ((rf != null) || (sorter.getRowFilter() != null)) {
+            sorter.setRowFilter(rf);
+        }
+
+        checkWarningState();
+    }
+
+    /**
+     * Reports to the sorter the rows whose filtering status has changed, or
+     * reapplies the filter if they are too scattered.
+     */
+    private void updateSorterRows(RowFilter rf, RowBitmap changedRows) {
+        DefaultRowSorter sorter = autoSelector.sorter;
+        if (sorter instanceof FilterRowSorter) {
+            ((FilterRowSorter) sorter).filterUpdated(changedRows);
+            return;
+        }
+
+        if (!sorter.getSortsOnUpdates()) {
+            // rowsUpdated would not update the rows in this case
+            sorter.setRowFilter(rf);
+            return;
+        }
+
+        int ranges[] = new int[2 * MAX_SORTER_UPDATES];
+        int len = 0;
+        int row = changedRows.nextSetBit(0);
+        while (row != -1) {
+            if (len == ranges.length) {
                 autoSelector.sorter.setRowFilter(rf);
+                return;
             }
 
-            checkWarningState();
+            int end = changedRows.nextClearBit(row);
+            ranges[len++] = row;
+            ranges[len++] = end - 1;
+            row = changedRows.nextSetBit(end);
+        }
+
+        for (int i = 0; i < len; i += 2) {
+            autoSelector.sorter.rowsUpdated(ranges[i], ranges[i + 1]);
         }
     }
 
@@ -461,14 +668,19 @@ public class FiltersHandler extends AndFilter
     void notifyUpdatedFilter() {
         if (sendNotifications < 0) {
             pendingNotifications = true;
-        } else {
+        } else if (filterUpdateDelay < 0) {
             updateTableFilter();
+        } else {
+            updateScheduler.schedule(filterUpdateDelay);
         }
     }
 
     /** Report that the table is updated. */
     public void tableUpdated() {
-        checkWarningState();
+        // the notification is delayed: the table could be already detached
+        if (table != null) {
+            checkWarningState();
+        }
     }
 
     /** Verifies if the current filter is hiding all table' rows. */
@@ -487,6 +699,71 @@ public class FiltersHandler extends AndFilter
         autoSelector.setSorter(getTable());
     }
 
+    /**
+     * Class to coalesce the filter updates, applying them after some delay,
+     * or once the pending events are processed.<br>
+     * The delay is enlarged up to the time taken by the last update, so that
+     * costly updates are less frequently applied.
+     */
+    class UpdateScheduler implements ActionListener, Runnable {
+
+        /** The time, in milliseconds, taken by the last update. */
+        long cost;
+
+        /** Set if an update has been scheduled, and not yet applied. */
+        private boolean scheduled;
+
+        private Timer timer;
+
+        /** Schedules an update, unless there is one already scheduled. */
+        public void schedule(int delay) {
+            if (!scheduled) {
+                scheduled = true;
+                if (delay == 0) {
+                    SwingUtilities.invokeLater(this);
+                } else {
+                    delay = (int) Math.max(delay,
+                            Math.min(cost, MAX_UPDATE_DELAY));
+                    if (timer == null) {
+                        timer = new Timer(delay, this);
+                        timer.setRepeats(false);
+                    } else {
+                        timer.setInitialDelay(delay);
+                    }
+
+                    timer.start();
+                }
+            }
+        }
+
+        /** Cancels any scheduled update, returning true if there was one. */
+        public boolean cancel() {
+            boolean ret = scheduled;
+            if (ret) {
+                scheduled = false;
+                if (timer != null) {
+                    timer.stop();
+                }
+            }
+
+            return ret;
+        }
+
+        @Override public void actionPerformed(ActionEvent e) {
+            run();
+        }
+
+        @Override public void run() {
+            if (cancel()) {
+                if (sendNotifications < 0) {
+                    pendingNotifications = true;
+                } else {
+                    updateTableFilter();
+                }
+            }
+        }
+    }
+
     /**
      * <p>Class performing the auto selection.</p>
      *
@@ -500,9 +777,15 @@ public class FiltersHandler extends AndFilter
         /** The associated sorter, if any. */
         DefaultRowSorter sorter;
 
+        /** The sorter created by the filter header, if any. */
+        DefaultRowSorter createdSorter;
+
         /** Autoselection mode *. */
         boolean autoSelection = FilterSettings.autoSelection;
 
+        /** If true, the created sorter is a {@link FilterRowSorter}. */
+        boolean incrementalSorting = FilterSettings.incrementalSorting;
+
         public void replacedTable(JTable oldTable, JTable newTable) {
             String event = "rowSorter";
             if (oldTable != null) {
@@ -539,7 +822,10 @@ public class FiltersHandler extends AndFilter
             if ((table != null)
                     && ((tableRowSorter == null)
                         || (tableRowSorter.getModel() != table.getModel()))) {
-                this.sorter = new TableRowSorter(table.getModel());
+                this.sorter = incrementalSorting
+                    ? new FilterRowSorter(table.getModel())
+                    : new TableRowSorter(table.getModel());
+                this.createdSorter = this.sorter;
                 // with next call, this method will be reinvoked
                 table.setRowSorter(this.sorter);
             } else {
@@ -555,6 +841,27 @@ public class FiltersHandler extends AndFilter
             }
         }
 
+        public void setIncrementalSorting(boolean enable) {
+            if (enable == incrementalSorting) {
+                return;
+            }
+
+            incrementalSorting = enable;
+
+            JTable table = getTable();
+            DefaultRowSorter oldSorter = sorter;
+            if ((table != null) && (oldSorter != null)
+                    && (oldSorter == createdSorter)) {
+                List sortKeys = oldSorter.getSortKeys();
+                // with next call, a new sorter is created and installed
+                table.setRowSorter(null);
+                DefaultRowSorter newSorter = sorter;
+                if ((newSorter != null) && (newSorter != oldSorter)) {
+                    newSorter.setSortKeys(sortKeys);
+                }
+            }
+        }
+
         public void setAutoSelection(boolean enable) {
             if ((autoSelection != enable) && (sorter != null)) {
                 if (enable) {
@@ -0,0 +1,51 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import javax.swing.table.TableModel;
+
+
+/**
+ * Interface implemented by table models that can be read out of the event
+ * dispatch thread, through a snapshot of their content.<br>
+ * The filters are only evaluated on a background thread (see {@link
+ * FilterSettings#backgroundFiltering}), and the adaptive choices only
+ * extracted on a background thread (see {@link
+ * FilterSettings#backgroundChoices}), for models implementing this
+ * interface; otherwise, they are computed on the event dispatch thread.<br>
+ * A model that can be safely read concurrently can return itself as
+ * snapshot.
+ */
+public interface ISnapshotTableModel {
+
+    /**
+     * Returns a read-only copy of the model's content, with the same rows
+     * and columns.<br>
+     * It is invoked on the event dispatch thread, and the returned model is
+     * then read on a background thread.
+     */
+    TableModel getSnapshot();
+}
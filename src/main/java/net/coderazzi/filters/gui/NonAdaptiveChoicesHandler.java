@@ -25,23 +25,38 @@
 
 package net.coderazzi.filters.gui;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import javax.swing.JTable;
 import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableModel;
 
+import net.coderazzi.filters.ComposedFilter;
 import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.ISequentialFilter;
 import net.coderazzi.filters.gui.editor.FilterEditor;
 
 
 /**
  * Internal class to handle choices without adaptive behaviour<br>
- * Choices are automatically updated as the table model changes.
+ * Choices are automatically updated as the table model changes.<br>
+ * The verdict of the filters on each row is cached until the filters or the
+ * row change, so that the sorter can re-filter (as when sorting) without
+ * evaluating again the filters.<br>
+ * These verdicts can be computed on a background thread, see {@link
+ * FilterSettings#backgroundFiltering}, or on several threads, see {@link
+ * FilterSettings#parallelFiltering}.
  */
 class NonAdaptiveChoicesHandler extends ChoicesHandler {
 
@@ -51,20 +66,63 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         new HashMap<IFilter, FilterEditor>();
     // entry used to filter rows
     private RowEntry rowEntry;
+    // the filter verdict on each row
+    private VerdictCache verdicts = new VerdictCache();
+    // the background evaluation of the filters in progress, if any
+    private BackgroundFiltering filtering;
+    // set if the background evaluation is cancelled, to restart it later
+    private boolean restartFiltering;
+    // increased on each change invalidating the background evaluation
+    private volatile int generation;
+
+    /** Number of rows evaluated between checks for cancellation. */
+    private static final int CANCEL_CHECK_MASK = 0x3ff;
+
+    /** Minimum number of unknown verdicts evaluated on each thread. */
+    private static final int PARALLEL_CHUNK_ROWS = 8192;
 
     public NonAdaptiveChoicesHandler(FiltersHandler handler) {
         super(handler);
     }
 
     @Override public RowFilter getRowFilter() {
-        return handler;
+        return verdicts;
+    }
+
+    @Override public boolean startBackgroundFiltering() {
+        // the model is only read in background through its snapshots
+        if (interrupted || !handler.isBackgroundFiltering()
+                || verdicts.isComplete()
+                || !(handler.getTable().getModel()
+                    instanceof ISnapshotTableModel)
+                || isSequential(handler)) {
+            return false;
+        }
+
+        if (filtering == null) {
+            filtering = new BackgroundFiltering();
+            setEditorsFiltering(true);
+            getBackgroundExecutor().execute(filtering);
+        }
+
+        return true;
+    }
+
+    @Override public void evaluateInParallel() {
+        if (!interrupted && (rowEntry != null)
+                && handler.isParallelFiltering() && !verdicts.isComplete()
+                && !isSequential(handler)) {
+            verdicts.evaluateInParallel();
+        }
     }
 
     @Override public boolean setInterrupted(boolean interrupted) {
+        cancelFiltering();
         if (this.interrupted != interrupted) {
             this.interrupted = interrupted;
             setEnableTableModelEvents(!interrupted);
             if (!interrupted) {
+                verdicts.reset();
                 for (FilterEditor editor : handler.getEditors()) {
                     editorUpdated(editor);
                 }
@@ -82,8 +140,16 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         }
     }
 
+    @Override public void choicesRequested(FilterEditor editor) {
+        if (!interrupted && editor.isEnabled()) {
+            setChoicesFromModel(editor, handler.getTable().getModel());
+        }
+    }
+
     @Override public boolean filterUpdated(IFilter iFilter,
                                            boolean retInfoRequired) {
+        verdicts.invalidate();
+
         // if return value is not required, do not bother checking for it, as
         // there is nothing to do with filter updates normally
         if (retInfoRequired) {
@@ -108,6 +174,7 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
 
     @Override public void filterOperation(boolean start) {
         handler.enableNotifications(!start);
+        verdicts.invalidate();
         if (!start && !interrupted) {
             initialiseFiltersInfo();
         }
@@ -122,7 +189,11 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
             }
         }
 
-        if (!interrupted) {
+        if (!interrupted && !isTableModelEventsEnabled()) {
+            // table events were not received while all filters disabled;
+            // otherwise, the verdicts are kept, not to cancel the evaluation
+            // just started for the enabled filter
+            verdicts.reset();
             setEnableTableModelEvents(true);
         }
     }
@@ -140,18 +211,23 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
                                        int        firstRow,
                                        int        lastRow,
                                        int        column) {
+        // any evaluation in progress could have read outdated values
+        cancelFiltering();
+        verdicts.tableUpdated(model, eventType, firstRow, lastRow);
         if (column != TableModelEvent.ALL_COLUMNS) {
             // a change in ONE column is always handled as an update
             // (every update is handled by re-extracting the choices
             FilterEditor editor = handler.getEditor(column);
-            if ((editor != null) && editor.isEnabled()) {
+            if ((editor != null) && editor.isEnabled()
+                    && !deferChoices(editor)) {
                 setChoicesFromModel(editor, model);
             }
         } else {
             lastRow = Math.min(model.getRowCount() - 1, lastRow);
             for (FilterEditor editor : handler.getEditors()) {
                 if (editor.isEnabled()
-                        && (AutoChoices.ENABLED == editor.getAutoChoices())) {
+                        && (AutoChoices.ENABLED == editor.getAutoChoices())
+                        && !deferChoices(editor)) {
                     // insert events can be handled by adding the
                     // new model's values.
                     // updates/deletes require reparsing the whole
@@ -167,6 +243,64 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         }
     }
 
+    /**
+     * Cancels any background evaluation in progress, which is restarted once
+     * the pending events are processed.
+     */
+    private void cancelFiltering() {
+        ++generation;
+        if (filtering != null) {
+            filtering = null;
+            setEditorsFiltering(false);
+            if (!restartFiltering) {
+                restartFiltering = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                        @Override public void run() {
+                            restartFiltering();
+                        }
+                    });
+            }
+        }
+    }
+
+    /** Restarts the background evaluation, after being cancelled. */
+    private void restartFiltering() {
+        restartFiltering = false;
+        if (!interrupted) {
+            // no effect if the evaluation has been already restarted
+            handler.notifyUpdatedFilter();
+        }
+    }
+
+    /** Reports to the editors whether the filters are being evaluated. */
+    private void setEditorsFiltering(boolean set) {
+        for (FilterEditor editor : handler.getEditors()) {
+            editor.setFiltering(set);
+        }
+    }
+
+    /** Returns true if the filter cannot be evaluated concurrently. */
+    private boolean isSequential(IFilter filter) {
+        if (filter instanceof ISequentialFilter) {
+            return true;
+        }
+
+        FilterEditor editor = filtersMap.get(filter);
+        if (editor != null) {
+            return editor.isSequentialFilter();
+        }
+
+        if (filter instanceof ComposedFilter) {
+            for (IFilter each : ((ComposedFilter) filter).getFilters()) {
+                if (each.isEnabled() && isSequential(each)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Initializes the choices in the given editor.<br>
      * It can update the mode of the editor, from ENABLED to ENUMS (in case of
@@ -196,12 +330,26 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
                 }
 
                 editor.setChoices(choices);
-            } else {
+            } else if (!deferChoices(editor)) {
                 setChoicesFromModel(editor, model);
             }
         }
     }
 
+    /**
+     * Returns true if the choices of the editor are not needed now, on lazy
+     * mode, marking the editor to request them later.
+     */
+    private boolean deferChoices(FilterEditor editor) {
+        if (handler.isLazyChoices() && !editor.isChoicesInUse()) {
+            editor.setChoicesDirty();
+
+            return true;
+        }
+
+        return false;
+    }
+
     /** Sets the content for the given editor from the model's values. */
     private void setChoicesFromModel(FilterEditor editor, TableModel model) {
         editor.setChoices(modelExtract(editor, model, 0,
@@ -242,4 +390,310 @@ class NonAdaptiveChoicesHandler extends ChoicesHandler {
         }
     }
 
+    /**
+     * RowFilter evaluating the filters of the {@link FiltersHandler} -through
+     * their {@link FilterPlan}-, caching its verdict for each model row.
+     */
+    private class VerdictCache extends RowFilter {
+
+        /** The rows whose verdict is known. */
+        private RowBitmap known = new RowBitmap();
+
+        /** The verdict for each row, only valid if known. */
+        private RowBitmap included = new RowBitmap();
+
+        /** The compiled filters, null if not yet compiled. */
+        private FilterPlan plan;
+
+        /** Entry used to evaluate the plan on the event dispatch thread. */
+        private FilterPlan.PlanEntry planEntry;
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            int row = (Integer) entry.getIdentifier();
+            if (row >= known.size()) {
+                return evaluate(entry);
+            }
+
+            if (known.get(row)) {
+                return included.get(row);
+            }
+
+            boolean ret = evaluate(entry);
+            known.set(row, true);
+            included.set(row, ret);
+
+            return ret;
+        }
+
+        /** Returns the compiled filters, compiling them if needed. */
+        public FilterPlan getPlan() {
+            if (plan == null) {
+                plan = FilterPlan.compile(handler, filtersMap);
+                planEntry = plan.createEntry();
+            }
+
+            return plan;
+        }
+
+        /** Evaluates the filters on the given entry. */
+        private boolean evaluate(RowFilter.Entry entry) {
+            FilterPlan compiled = getPlan();
+            planEntry.setEntry(entry);
+
+            return compiled.include(planEntry);
+        }
+
+        /** Discards all the verdicts, after a filter change. */
+        public void invalidate() {
+            cancelFiltering();
+            known.setAll(false);
+            plan = null;
+        }
+
+        /** Returns true if the verdict of every row is known. */
+        public boolean isComplete() {
+            return known.nextClearBit(0) == known.size();
+        }
+
+        /**
+         * Evaluates the filters on the rows whose verdict is unknown; the
+         * rows are split in ranges of whole bitmap words, each evaluated on a
+         * separate thread, with its own entry. Nothing is done if there are
+         * not enough rows to evaluate.
+         */
+        public void evaluateInParallel() {
+            int rows = known.size();
+            if (rows != rowEntry.getModelRowCount()) {
+                return;
+            }
+
+            int chunks = Math.min(FilterSettings.parallelThreads,
+                    (rows - known.cardinality()) / PARALLEL_CHUNK_ROWS);
+            if (chunks < 2) {
+                return;
+            }
+
+            final FilterPlan compiled = getPlan();
+            final RowBitmap result = included.copy();
+            int words = known.getWordCount();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            ExecutorService executor = getParallelExecutor();
+            for (int c = 1; c < chunks; c++) {
+                final int from = (c * words) / chunks;
+                final int to = ((c + 1) * words) / chunks;
+                final RowEntry entry = new RowEntry(rowEntry);
+                futures.add(executor.submit(new Runnable() {
+                            @Override public void run() {
+                                evaluate(compiled, entry, result, from, to);
+                            }
+                        }));
+            }
+
+            evaluate(compiled, rowEntry, result, 0, words / chunks);
+
+            boolean threadInterrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException ie) {
+                        threadInterrupted = true;
+                    } catch (ExecutionException ee) {
+                        Throwable cause = ee.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+
+            if (threadInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            install(result);
+        }
+
+        /**
+         * Evaluates the plan on the unknown rows of the words in [from, to),
+         * setting the verdicts in the given result.
+         */
+        private void evaluate(FilterPlan plan,
+                              RowEntry   entry,
+                              RowBitmap  result,
+                              int        from,
+                              int        to) {
+            FilterPlan.PlanEntry evaluated = plan.createEntry();
+            int rows = known.size();
+            for (int w = from; w < to; w++) {
+                long unknown = ~known.getWord(w);
+                long word = result.getWord(w) & ~unknown;
+                while (unknown != 0) {
+                    int bit = Long.numberOfTrailingZeros(unknown);
+                    entry.row = (w << 6) + bit;
+                    if (entry.row >= rows) {
+                        break;
+                    }
+
+                    evaluated.setEntry(entry);
+                    if (plan.include(evaluated)) {
+                        word |= 1L << bit;
+                    }
+
+                    unknown &= unknown - 1;
+                }
+
+                result.setWord(w, word);
+            }
+        }
+
+        /** Sets the verdicts of all the rows, evaluated at once. */
+        public void install(RowBitmap verdicts) {
+            known = new RowBitmap(verdicts.size(), true);
+            included = verdicts;
+        }
+
+        /** Discards all the verdicts, adapting to the table's model size. */
+        public void reset() {
+            JTable table = handler.getTable();
+            reset((table == null) ? 0 : table.getModel().getRowCount());
+        }
+
+        /** Discards all the verdicts, for the given number of rows. */
+        private void reset(int rows) {
+            cancelFiltering();
+            known = new RowBitmap(rows, false);
+            included = new RowBitmap(rows, false);
+            plan = null;
+        }
+
+        /** Updates the verdicts after a table change. */
+        public void tableUpdated(TableModel model,
+                                 int        eventType,
+                                 int        firstRow,
+                                 int        lastRow) {
+            int rows = model.getRowCount();
+            int count = lastRow - firstRow + 1;
+            int size = known.size();
+            if (eventType == TableModelEvent.INSERT) {
+                if (size + count == rows) {
+                    known.insert(firstRow, count, false);
+                    included.insert(firstRow, count, false);
+
+                    return;
+                }
+            } else if (eventType == TableModelEvent.DELETE) {
+                if (size - count == rows) {
+                    known.remove(firstRow, count);
+                    included.remove(firstRow, count);
+
+                    return;
+                }
+            } else if ((size == rows) && (lastRow < rows)) {
+                while (firstRow <= lastRow) {
+                    known.set(firstRow++, false);
+                }
+
+                return;
+            }
+
+            // any other change (as fireTableDataChanged)
+            reset(rows);
+        }
+    }
+
+    /**
+     * Evaluation of the filters on a background thread, see {@link
+     * FilterSettings#backgroundFiltering}.<br>
+     * The model is read through its {@link ISnapshotTableModel} snapshot:
+     * as any table or filter change increases the generation counter, an
+     * evaluation running while the model changes is cancelled, and its
+     * result discarded. Otherwise, the verdicts are installed at once on the
+     * event dispatch thread, and the filter is applied on the table.
+     */
+    class BackgroundFiltering implements Runnable {
+
+        /** The generation of the handler when the evaluation started. */
+        private int started = generation;
+
+        /** Entry used to read the model values. */
+        private RowEntry entry;
+
+        /** The filters to evaluate, compiled on the event dispatch thread. */
+        private FilterPlan plan = verdicts.getPlan();
+
+        /** The rows to evaluate. */
+        private int rows;
+
+        BackgroundFiltering() {
+            TableModel model = ((ISnapshotTableModel) handler.getTable()
+                        .getModel()).getSnapshot();
+
+            Collection<FilterEditor> eds = handler.getEditors();
+            entry = new RowEntry(model,
+                    eds.toArray(new FilterEditor[eds.size()]));
+            rows = model.getRowCount();
+        }
+
+        /** Returns true if the evaluation is outdated. */
+        public boolean isCancelled() {
+            return started != generation;
+        }
+
+        @Override public void run() {
+            final RowBitmap result = new RowBitmap(rows, false);
+            FilterPlan.PlanEntry evaluated = plan.createEntry();
+            try {
+                for (int row = 0; row < rows; row++) {
+                    if (((row & CANCEL_CHECK_MASK) == 0) && isCancelled()) {
+                        return;
+                    }
+
+                    entry.row = row;
+                    evaluated.setEntry(entry);
+                    if (plan.include(evaluated)) {
+                        result.set(row, true);
+                    }
+                }
+            } catch (final RuntimeException ex) {
+                // the model could be changing while being read: this is
+                // known once the table event is processed
+                SwingUtilities.invokeLater(new Runnable() {
+                        @Override public void run() {
+                            failed(ex);
+                        }
+                    });
+
+                return;
+            }
+
+            SwingUtilities.invokeLater(new Runnable() {
+                    @Override public void run() {
+                        completed(result);
+                    }
+                });
+        }
+
+        /** Installs the evaluated verdicts, invoked on the EDT. */
+        void completed(RowBitmap result) {
+            if (!isCancelled()) {
+                filtering = null;
+                setEditorsFiltering(false);
+                verdicts.install(result);
+                handler.updateTableFilter();
+            }
+        }
+
+        /** Reports an evaluation failure, invoked on the EDT. */
+        void failed(RuntimeException ex) {
+            if (!isCancelled()) {
+                filtering = null;
+                setEditorsFiltering(false);
+                throw ex;
+            }
+        }
+    }
 }
@@ -58,16 +58,22 @@ import net.coderazzi.filters.parser.Parser;
  */
 public class ParserModel implements IParserModel {
 
+    /** Property fired when the ignore accents value changes. */
+    public static final String IGNORE_ACCENTS_PROPERTY = "ignoreAccents";
+
+    /** Property fired when the range index value changes. */
+    public static final String RANGE_INDEX_PROPERTY = "rangeIndex";
+
+    /** Property fired when the hash index value changes. */
+    public static final String HASH_INDEX_PROPERTY = "hashIndex";
+
+    /** Property fired when the text index value changes. */
+    public static final String TEXT_INDEX_PROPERTY = "textIndex";
+
     /** Format for primitive types (plus Date). */
     private static Map<Class, Format> basicFormats =
         new HashMap<Class, Format>();
 
-    /** String comparator, case dependent. */
-    private static Comparator<String> strComparator;
-
-    /** String comparator, ignoring case. */
-    private static Comparator<String> icStrComparator;
-
     /** Formats defined for the model. */
     private Map<Class, Format> formats = new HashMap<Class, Format>();
 
@@ -78,6 +84,18 @@ public class ParserModel implements IParserModel {
     /** Ignore case flag. */
     private boolean ignoreCase;
 
+    /** Ignore accents flag. */
+    private boolean ignoreAccents = FilterSettings.ignoreAccents;
+
+    /** Range index flag. */
+    private boolean rangeIndex = FilterSettings.rangeIndex;
+
+    /** Hash index flag. */
+    private boolean hashIndex = FilterSettings.hashIndex;
+
+    /** Text index flag. */
+    private boolean textIndex = FilterSettings.textIndex;
+
     /** Helper to handle property change events. */
     private PropertyChangeSupport propertiesHandler = new PropertyChangeSupport(
             this);
@@ -113,8 +131,16 @@ public class ParserModel implements IParserModel {
         Format fmt = (cl == String.class) ? null : editor.getFormat();
         Comparator cmp = (fmt == null) ? null : editor.getComparator();
 
-        return createParser(fmt, cmp, getStringComparator(ignoreCase), ignoreCase,
-                editor.getModelIndex());
+        IParser ret = createParser(fmt, cmp, getStringComparator(ignoreCase),
+                ignoreCase, editor.getModelIndex());
+        if (ret instanceof Parser) {
+            ((Parser) ret).setIgnoreAccents(ignoreAccents);
+            ((Parser) ret).setRangeIndex(rangeIndex);
+            ((Parser) ret).setHashIndex(hashIndex);
+            ((Parser) ret).setTextIndex(textIndex);
+        }
+
+        return ret;
     }
 
     /** Creates the parser as required with the given parameters */
@@ -137,6 +163,82 @@ public class ParserModel implements IParserModel {
         }
     }
 
+    /** Returns true if the accents are ignored when matching strings. */
+    public boolean isIgnoreAccents() {
+        return ignoreAccents;
+    }
+
+    /**
+     * Sets whether to ignore the accents -diacritical marks- when matching
+     * strings: an expression like 'cafe' matches then 'caf&eacute;'.
+     */
+    public void setIgnoreAccents(boolean set) {
+        if (set != this.ignoreAccents) {
+            this.ignoreAccents = set;
+            propertiesHandler.firePropertyChange(IGNORE_ACCENTS_PROPERTY, !set,
+                set);
+        }
+    }
+
+    /** Returns true if comparison operators use a range index. */
+    public boolean isRangeIndex() {
+        return rangeIndex;
+    }
+
+    /**
+     * Sets whether to resolve the comparison operators with a sorted index of
+     * the column values, built when first needed. It speeds up applying
+     * comparisons like '&gt;= 1000' on large tables, at the cost of the
+     * memory of the index, and of maintaining it on each table update.
+     */
+    public void setRangeIndex(boolean set) {
+        if (set != this.rangeIndex) {
+            this.rangeIndex = set;
+            propertiesHandler.firePropertyChange(RANGE_INDEX_PROPERTY, !set,
+                set);
+        }
+    }
+
+    /** Returns true if equality operators use a hash index. */
+    public boolean isHashIndex() {
+        return hashIndex;
+    }
+
+    /**
+     * Sets whether to resolve the equality operators -and the selection of
+     * single choices- with a hash index of the column values, built when
+     * first needed. It speeds up filtering large tables on a given value, at
+     * the cost of the memory of the index, and of maintaining it on each
+     * table update.
+     */
+    public void setHashIndex(boolean set) {
+        if (set != this.hashIndex) {
+            this.hashIndex = set;
+            propertiesHandler.firePropertyChange(HASH_INDEX_PROPERTY, !set,
+                set);
+        }
+    }
+
+    /** Returns true if wildcard operators use a trigrams index. */
+    public boolean isTextIndex() {
+        return textIndex;
+    }
+
+    /**
+     * Sets whether to resolve the wildcard expressions with an index of the
+     * trigrams of the column strings, built when first needed. It speeds up
+     * expressions like '*fragment*' on large free text columns, at the cost
+     * of the memory of the index, and of maintaining it on each table
+     * update.
+     */
+    public void setTextIndex(boolean set) {
+        if (set != this.textIndex) {
+            this.textIndex = set;
+            propertiesHandler.firePropertyChange(TEXT_INDEX_PROPERTY, !set,
+                set);
+        }
+    }
+
     /** Returns the {@link Format} for the given class. */
     @Override public final Format getFormat(Class cl) {
         Format ret = formats.get(cl);
@@ -209,27 +311,8 @@ public class ParserModel implements IParserModel {
 
     /** Returns a default singleton comparator for the given case flag. */
     public static Comparator<String> stringComparator(boolean ignoreCase) {
-        if (ignoreCase) {
-            if (icStrComparator == null) {
-                icStrComparator = new Comparator<String>() {
-                    @Override public int compare(String o1, String o2) {
-                        return o1.compareToIgnoreCase(o2);
-                    }
-                };
-            }
-
-            return icStrComparator;
-        }
-
-        if (strComparator == null) {
-            strComparator = new Comparator<String>() {
-                @Override public int compare(String o1, String o2) {
-                    return o1.compareTo(o2);
-                }
-            };
-        }
-
-        return strComparator;
+        return ignoreCase ? Parser.IGNORE_CASE_STRING_COMPARATOR
+                          : Parser.STRING_COMPARATOR;
     }
 
     /** Returns the {@link Format} defined for every FilterModel. */
@@ -430,11 +513,7 @@ public class ParserModel implements IParserModel {
 
     /** Default comparator for Comparable instances. */
     private static Comparator COMPARABLE_COMPARATOR =
-        new Comparator<Comparable>() {
-            @Override public int compare(Comparable o1, Comparable o2) {
-                return o1.compareTo(o2);
-            }
-        };
+        Parser.NATURAL_COMPARATOR;
 
     private static Comparator DEFAULT_COMPARATOR = new Comparator() {
         @Override public int compare(Object o1, Object o2) {
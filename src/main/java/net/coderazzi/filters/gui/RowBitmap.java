@@ -0,0 +1,286 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+/**
+ * Compact set of table model rows, stored as a bitmap (one bit per row).<br>
+ * Unlike {@link java.util.BitSet}, it keeps track of the number of rows, and
+ * supports inserting and removing rows, shifting the following ones, as it
+ * happens on the table model when rows are added or deleted.<br>
+ * Bits beyond the current size are always kept unset, so that word-wide
+ * operations can be performed without additional masking.
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+final class RowBitmap {
+
+    private static final long ALL = -1L;
+
+    private long words[];
+    private int size;
+
+    /** Creates an empty bitmap. */
+    public RowBitmap() {
+        words = new long[1];
+    }
+
+    /** Creates a bitmap with the given size, all rows set to the value. */
+    public RowBitmap(int size, boolean value) {
+        this();
+        insert(0, size, value);
+    }
+
+    /** Returns the number of rows in the bitmap. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of words (longs) used to store the bitmap. */
+    public int getWordCount() {
+        return (size + 63) >>> 6;
+    }
+
+    /** Returns the word (64 rows) at the given word position. */
+    public long getWord(int index) {
+        return words[index];
+    }
+
+    /**
+     * Sets the word at the given position; bits beyond the bitmap's size are
+     * silently cleared.
+     */
+    public void setWord(int index, long word) {
+        int last = getWordCount() - 1;
+        if ((index == last) && ((size & 63) != 0)) {
+            word &= ALL >>> (64 - (size & 63));
+        }
+
+        words[index] = word;
+    }
+
+    /** Returns the value for the given row. */
+    public boolean get(int row) {
+        return 0 != (words[row >>> 6] & (1L << row));
+    }
+
+    /**
+     * Sets or unsets the given row.
+     *
+     * @return  true if it implies a change
+     */
+    public boolean set(int row, boolean value) {
+        int index = row >>> 6;
+        long now = words[index];
+        if (value) {
+            words[index] = now | (1L << row);
+        } else {
+            words[index] = now & ~(1L << row);
+        }
+
+        return now != words[index];
+    }
+
+    /** Sets all the rows to the given value. */
+    public void setAll(boolean value) {
+        setRange(0, size, value);
+    }
+
+    /** Removes all the rows. */
+    public void clear() {
+        size = 0;
+        words = new long[1];
+    }
+
+    /** Returns the number of rows set. */
+    public int cardinality() {
+        int ret = 0;
+        for (int i = getWordCount() - 1; i >= 0; i--) {
+            ret += Long.bitCount(words[i]);
+        }
+
+        return ret;
+    }
+
+    /** Returns true if no row is set. */
+    public boolean isEmpty() {
+        for (int i = getWordCount() - 1; i >= 0; i--) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the first row set at or after the given row, or -1 if there is
+     * no such row.
+     */
+    public int nextSetBit(int row) {
+        if (row >= size) {
+            return -1;
+        }
+
+        int index = row >>> 6;
+        long word = words[index] & (ALL << row);
+        int last = getWordCount();
+        while (word == 0) {
+            if (++index == last) {
+                return -1;
+            }
+
+            word = words[index];
+        }
+
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the first row not set at or after the given row, or the bitmap's
+     * size if there is no such row.
+     */
+    public int nextClearBit(int row) {
+        if (row >= size) {
+            return size;
+        }
+
+        int index = row >>> 6;
+        long word = ~words[index] & (ALL << row);
+        int last = getWordCount();
+        while (word == 0) {
+            if (++index == last) {
+                return size;
+            }
+
+            word = ~words[index];
+        }
+
+        return Math.min(size, (index << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Inserts count rows at the given position, all with the given value;
+     * existing rows on and after that position are shifted.
+     */
+    public void insert(int row, int count, boolean value) {
+        if (count <= 0) {
+            return;
+        }
+
+        int tailLength = size - row;
+        long tail[] = (tailLength == 0) ? null : extract(row, tailLength);
+        int newSize = size + count;
+        if (((newSize + 63) >>> 6) > words.length) {
+            long grown[] = new long[Math.max((newSize + 63) >>> 6,
+                        words.length + (words.length >> 1))];
+            System.arraycopy(words, 0, grown, 0, words.length);
+            words = grown;
+        }
+
+        size = newSize;
+        setRange(row, row + count, value);
+        if (tail != null) {
+            write(tail, row + count, tailLength);
+        }
+    }
+
+    /** Removes count rows, starting at the given position. */
+    public void remove(int row, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        int tailLength = size - row - count;
+        if (tailLength > 0) {
+            write(extract(row + count, tailLength), row, tailLength);
+        }
+
+        int newSize = size - count;
+        setRange(newSize, size, false);
+        size = newSize;
+    }
+
+    /** Returns a copy of this bitmap. */
+    public RowBitmap copy() {
+        RowBitmap ret = new RowBitmap();
+        ret.words = words.clone();
+        ret.size = size;
+
+        return ret;
+    }
+
+    /** Sets the rows in [from, to) to the given value. */
+    private void setRange(int from, int to, boolean value) {
+        while (from < to) {
+            int index = from >>> 6;
+            int bits = Math.min(64 - (from & 63), to - from);
+            long mask = (ALL >>> (64 - bits)) << from;
+            if (value) {
+                words[index] |= mask;
+            } else {
+                words[index] &= ~mask;
+            }
+
+            from += bits;
+        }
+    }
+
+    /** Returns the rows in [from, from+length) packed on a new array. */
+    private long[] extract(int from, int length) {
+        long ret[] = new long[(length + 63) >>> 6];
+        int shift = from & 63;
+        int index = from >>> 6;
+        for (int i = 0; i < ret.length; i++, index++) {
+            long word = words[index] >>> shift;
+            if ((shift != 0) && ((index + 1) < words.length)) {
+                word |= words[index + 1] << (64 - shift);
+            }
+
+            ret[i] = word;
+        }
+
+        if ((length & 63) != 0) {
+            ret[ret.length - 1] &= ALL >>> (64 - (length & 63));
+        }
+
+        return ret;
+    }
+
+    /** Writes the packed rows at the given position. */
+    private void write(long packed[], int to, int length) {
+        setRange(to, to + length, false);
+
+        int shift = to & 63;
+        int index = to >>> 6;
+        for (int i = 0; i < packed.length; i++, index++) {
+            long word = packed[i];
+            words[index] |= word << shift;
+            if ((shift != 0) && ((index + 1) < words.length)) {
+                words[index + 1] |= word >>> (64 - shift);
+            }
+        }
+    }
+}
@@ -310,6 +310,134 @@ public class TableFilterHeader extends JPanel implements PropertyChangeListener
         return filtersHandler.isAdaptiveChoices();
     }
 
+    /**
+     * Sets whether the adaptive choices are extracted on a background
+     * thread, so that large tables do not block the user interface on each
+     * filter update.<br>
+     * Choices are then set once the extraction completes; any extraction in
+     * progress is cancelled when the table or the filters change again.<br>
+     * It only applies if the table model implements {@link
+     * ISnapshotTableModel}: the extraction reads then a snapshot of the model.
+     *
+     * @see  FilterSettings#backgroundChoices
+     */
+    public void setBackgroundChoices(boolean enable) {
+        filtersHandler.setBackgroundChoices(enable);
+    }
+
+    /** Returns true if the adaptive choices are extracted in background. */
+    public boolean isBackgroundChoices() {
+        return filtersHandler.isBackgroundChoices();
+    }
+
+    /**
+     * Sets whether the choices are computed only when needed: when the
+     * editor's popup is displayed, or the editor gets the focus (as the
+     * choices are then used for autocompletion).<br>
+     * On tables with many columns, this avoids updating the choices of every
+     * editor on each filter or table change.
+     *
+     * @see  FilterSettings#lazyChoices
+     */
+    public void setLazyChoices(boolean enable) {
+        filtersHandler.setLazyChoices(enable);
+    }
+
+    /** Returns true if the choices are only computed when needed. */
+    public boolean isLazyChoices() {
+        return filtersHandler.isLazyChoices();
+    }
+
+    /**
+     * Sets whether the row sorter created by the header, when the table has
+     * none, is a {@link FilterRowSorter}: narrowing a filter requires then no
+     * sorting at all, and widening it only requires sorting the rows that
+     * become visible. Otherwise, a {@link javax.swing.table.TableRowSorter}
+     * is created.<br>
+     * A sorter already created by the header is replaced, keeping its sort
+     * keys; sorters installed on the table are never replaced.
+     *
+     * @see  FilterSettings#incrementalSorting
+     */
+    public void setIncrementalSorting(boolean enable) {
+        filtersHandler.setIncrementalSorting(enable);
+    }
+
+    /** Returns true if the header creates a {@link FilterRowSorter}. */
+    public boolean isIncrementalSorting() {
+        return filtersHandler.isIncrementalSorting();
+    }
+
+    /**
+     * Sets the time, in milliseconds, to coalesce filter updates -as several
+     * editors are programmatically changed, or the user types fast- into a
+     * single table update.<br>
+     * With 0, the updates are applied once the pending events are processed;
+     * positive values are enlarged if the last update took longer. Negative
+     * values apply each update immediately.
+     *
+     * @see  FilterSettings#filterUpdateDelay
+     * @see  #flushFilterUpdates()
+     */
+    public void setFilterUpdateDelay(int delay) {
+        filtersHandler.setFilterUpdateDelay(delay);
+    }
+
+    /** Returns the time to coalesce filter updates. */
+    public int getFilterUpdateDelay() {
+        return filtersHandler.getFilterUpdateDelay();
+    }
+
+    /** Applies immediately any filter update not yet applied on the table. */
+    public void flushFilterUpdates() {
+        filtersHandler.flushFilterUpdates();
+    }
+
+    /**
+     * Sets whether the filters are evaluated on a background thread, so that
+     * large tables do not block the user interface on each filter update;
+     * it only applies if the choices are not adaptive.<br>
+     * The table keeps displaying the previous rows until the evaluation
+     * completes, and any evaluation in progress is cancelled when the table
+     * or the filters change again.<br>
+     * It only applies if the table model implements {@link
+     * ISnapshotTableModel}: the evaluation reads then a snapshot of the
+     * model. If any enabled filter implements {@link
+     * net.coderazzi.filters.ISequentialFilter}, the filters are evaluated on
+     * the event dispatch thread.
+     *
+     * @see  FilterSettings#backgroundFiltering
+     * @see  ISnapshotTableModel
+     */
+    public void setBackgroundFiltering(boolean enable) {
+        filtersHandler.setBackgroundFiltering(enable);
+    }
+
+    /** Returns true if the filters are evaluated in background. */
+    public boolean isBackgroundFiltering() {
+        return filtersHandler.isBackgroundFiltering();
+    }
+
+    /**
+     * Sets whether the filters are evaluated on several threads, splitting
+     * the rows of large tables in ranges; it only applies if the choices are
+     * not adaptive.<br>
+     * The verdict of the filters on every row is then known before the table
+     * is filtered; if any enabled filter implements {@link
+     * net.coderazzi.filters.ISequentialFilter}, the filters are evaluated on
+     * a single thread.
+     *
+     * @see  FilterSettings#parallelFiltering
+     */
+    public void setParallelFiltering(boolean enable) {
+        filtersHandler.setParallelFiltering(enable);
+    }
+
+    /** Returns true if the filters are evaluated on several threads. */
+    public boolean isParallelFiltering() {
+        return filtersHandler.isParallelFiltering();
+    }
+
     /**
      * Enables instant filtering, as the user edits the filter's text<br>
      * The exact way the instant filtering works depends on the associated.
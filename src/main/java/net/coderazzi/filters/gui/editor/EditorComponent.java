@@ -55,6 +55,7 @@ import net.coderazzi.filters.IParser;
 import net.coderazzi.filters.IParser.InstantFilter;
 import net.coderazzi.filters.gui.CustomChoice;
 import net.coderazzi.filters.gui.Look;
+import net.coderazzi.filters.parser.Parser;
 
 
 /**
@@ -75,6 +76,7 @@ class EditorComponent extends JTextField {
     boolean allowInstantVanishing;
     boolean autoCompletion;
     boolean warning;
+    boolean filtering;
     FilterEditor filterEditor;
     PopupComponent popup;
     static final Pattern newLinePattern = Pattern.compile("[\n\r\t\f]");
@@ -120,6 +122,15 @@ class EditorComponent extends JTextField {
         return controller.getFilter();
     }
 
+    /**
+     * Returns the expression that produced the current filter, or null if
+     * the filter does not come from a parsed text.
+     */
+    public Object getFilterExpression() {
+        return (controller instanceof TextController)
+            ? ((TextController) controller).expression : null;
+    }
+
     /** Returns the definition associated to the current editor. */
     public Object getContent() {
         return controller.getContent();
@@ -130,12 +141,43 @@ class EditorComponent extends JTextField {
         controller.setContent(content);
     }
 
-    /** Requests an update on the text parser used by the editor. */
+    /** Requests an update on the parser used by the editor. */
     public void updateParser() {
         if (controller instanceof TextController) {
             ((TextController) controller).setParser(
                 filterEditor.createParser());
+        } else if (controller instanceof RenderedController) {
+            ((RenderedController) controller).setParser(
+                filterEditor.createParser());
+        }
+    }
+
+    /** Reports a table change to the parser, see {@link Parser}. */
+    public void tableUpdated(int eventType, int firstRow, int lastRow) {
+        Parser parser = getCachingParser();
+        if (parser != null) {
+            parser.tableUpdated(eventType, firstRow, lastRow);
+        }
+    }
+
+    /** Discards the strings cached by the parser for each row. */
+    public void clearParserRowsCache() {
+        Parser parser = getCachingParser();
+        if (parser != null) {
+            parser.clearRowsCache();
+        }
+    }
+
+    /** Returns the parser, if it caches row information -a {@link Parser}. */
+    private Parser getCachingParser() {
+        IParser parser = null;
+        if (controller instanceof TextController) {
+            parser = ((TextController) controller).textParser;
+        } else if (controller instanceof RenderedController) {
+            parser = ((RenderedController) controller).parser;
         }
+
+        return (parser instanceof Parser) ? (Parser) parser : null;
     }
 
     /** Requests the parser to escape choices, which can be null. */
@@ -213,6 +255,7 @@ class EditorComponent extends JTextField {
         }
 
         controller = new RenderedController();
+        updateParser();
         filterEditor.filterUpdated(null);
     }
 
@@ -250,6 +293,16 @@ class EditorComponent extends JTextField {
         }
     }
 
+    /** Reports that the filters are being evaluated in background. */
+    public void setFiltering(boolean filtering) {
+        if (this.filtering != filtering) {
+            this.filtering = filtering;
+            if (isEnabled()) {
+                updateLook();
+            }
+        }
+    }
+
     /** Returns true if the focus is on this editor. */
     public boolean isFocused() {
         return focus;
@@ -308,6 +361,8 @@ class EditorComponent extends JTextField {
         private CellRendererPane painter = new CellRendererPane();
         RowFilter filter;
         Object cache = content;
+        // the parser is only used to resolve the filters with its index
+        IParser parser;
 
         RenderedController() {
             addMouseListener(this);
@@ -343,6 +398,15 @@ class EditorComponent extends JTextField {
             return filter;
         }
 
+        /** Sets the parser, updating the filter if it uses the parser. */
+        public void setParser(IParser parser) {
+            this.parser = parser;
+            if ((filter != null) && !(cache instanceof CustomChoice)) {
+                filter = createFilter(cache);
+                filterEditor.filterUpdated(filter);
+            }
+        }
+
         @Override public void consolidateFilter() {
             Object currentContent = getContent();
             if (currentContent != cache) {
@@ -350,22 +414,27 @@ class EditorComponent extends JTextField {
                 if (cache instanceof CustomChoice) {
                     filter = ((CustomChoice) cache).getFilter(filterEditor);
                 } else {
-                    filter = new RowFilter() {
-                        @Override public boolean include(
-                                RowFilter.Entry entry) {
-                            Object val = entry.getValue(
-                                    filterEditor.getModelIndex());
-
-                            return (val == null) ? (cache == null)
-                                                 : val.equals(cache);
-                        }
-                    };
+                    filter = createFilter(cache);
                 }
 
                 filterEditor.filterUpdated(filter);
             }
         }
 
+        /** Returns the filter matching the given value. */
+        private RowFilter createFilter(final Object value) {
+            RowFilter ret = new RowFilter() {
+                @Override public boolean include(RowFilter.Entry entry) {
+                    Object val = entry.getValue(filterEditor.getModelIndex());
+
+                    return (val == null) ? (value == null) : val.equals(value);
+                }
+            };
+
+            return (parser instanceof Parser)
+                ? ((Parser) parser).indexEquals(ret, value) : ret;
+        }
+
         @Override public void updateLook() {
             prepareComponentLook(null);
         }
@@ -396,6 +465,8 @@ class EditorComponent extends JTextField {
         private Object content;
         // the filter associated to the content variable
         private RowFilter filter;
+        // the expression parsed to obtain the filter, if any
+        ParsedExpression expression;
         private boolean error;
         private boolean decorate;
 
@@ -498,9 +569,12 @@ class EditorComponent extends JTextField {
             CustomChoice cc = (decorate && (content instanceof CustomChoice))
                 ? (CustomChoice) content : null;
             Look look = prepareComponentLook(cc);
-            if (isEnabled() && (error || warning)) {
+            if (isEnabled() && (error || warning || filtering)) {
+                // the filter is not yet applied while filtering: the text is
+                // displayed as disabled, unless an error or warning applies
                 Color foreground = error ? look.getErrorForeground()
-                                         : look.getWarningForeground();
+                    : (warning ? look.getWarningForeground()
+                               : look.getDisabledForeground());
                 if (foreground != getForeground()) {
                     setForeground(foreground);
                 }
@@ -602,29 +676,34 @@ class EditorComponent extends JTextField {
                     if (match.content instanceof CustomChoice) {
                         CustomChoice cc = (CustomChoice) content;
                         filter = cc.getFilter(filterEditor);
+                        expression = null;
                     } else {
-                        filter = textParser.parseText(parseEscape(text));
+                        filter = parseText(text);
                     }
                 } else if (instantFiltering && userUpdate) {
                 	// parse the expression as it is. If this would produce
                     // no rows, evaluate the filter as an instant expression
-                    filter = textParser.parseText(parseEscape(text));
+                    filter = parseText(text);
                     if (filterEditor.attemptFilterUpdate(filter)) {
                         content = text;
                         setWarning(false);
                         currentFilter = filter; // to not apply it again below
                     } else {
+                        String parse = parseEscape(text);
                         InstantFilter iFilter = textParser.parseInstantText(
-                                parseEscape(text));
+                                parse);
                         content = iFilter.expression;
                         filter = iFilter.filter;
+                        expression = new ParsedExpression(textParser, parse,
+                                true);
                     }
                 } else {
-                    filter = textParser.parseText(parseEscape(text));
+                    filter = parseText(text);
                     content = text;
                 }
             } catch (ParseException pex) {
                 filter = null;
+                expression = null;
                 content = text;
                 localError = true;
             }
@@ -642,6 +721,15 @@ class EditorComponent extends JTextField {
             }
         }
 
+        /** Parses the text, setting the associated expression. */
+        private RowFilter parseText(String text) throws ParseException {
+            String parse = parseEscape(text);
+            RowFilter ret = textParser.parseText(parse);
+            expression = new ParsedExpression(textParser, parse, false);
+
+            return ret;
+        }
+
         /** Sets the editor text, as a programmed action (userUpdate=false). */
         protected void setEditorText(String text) {
             userUpdate = false;
@@ -954,4 +1042,44 @@ class EditorComponent extends JTextField {
         }
     }
 
+    /**
+     * Expression parsed by a given parser, to identify the filter obtained
+     * from it.
+     */
+    static final class ParsedExpression {
+        private IParser parser;
+        private String text;
+        private boolean instant;
+
+        ParsedExpression(IParser parser, String text, boolean instant) {
+            this.parser = parser;
+            this.text = text;
+            this.instant = instant;
+        }
+
+        /**
+         * Returns true if the filter for this expression can only include
+         * rows included by the filter of the base expression.
+         */
+        public boolean isNarrowing(ParsedExpression base) {
+            return base.instant && (parser == base.parser)
+                    && (parser instanceof Parser)
+                    && ((Parser) parser).isNarrowing(base.text, text);
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof ParsedExpression)) {
+                return false;
+            }
+
+            ParsedExpression other = (ParsedExpression) o;
+
+            return (parser == other.parser) && (instant == other.instant)
+                    && text.equals(other.text);
+        }
+
+        @Override public int hashCode() {
+            return text.hashCode();
+        }
+    }
 }
@@ -28,6 +28,7 @@ package net.coderazzi.filters.gui.editor;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Cursor;
 import java.awt.Event;
 import java.awt.Graphics;
 import java.awt.Insets;
@@ -57,6 +58,7 @@ import javax.swing.border.Border;
 import net.coderazzi.filters.Filter;
 import net.coderazzi.filters.IFilter;
 import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.ISequentialFilter;
 import net.coderazzi.filters.gui.AutoChoices;
 import net.coderazzi.filters.gui.ChoiceRenderer;
 import net.coderazzi.filters.gui.CustomChoice;
@@ -86,6 +88,13 @@ import net.coderazzi.filters.parser.DateComparator;
 public class FilterEditor extends JComponent implements IFilterEditor {
 
     private static final long serialVersionUID = 6908400421021655278L;
+
+    /**
+     * Property fired when the filters start or end being evaluated in
+     * background, see {@link #isFiltering()}.
+     */
+    public static final String FILTERING_PROPERTY = "filtering";
+
     private EditorBorder border = new EditorBorder();
     private Set<CustomChoice> customChoices;
     private AutoChoices autoChoices;
@@ -95,6 +104,8 @@ public class FilterEditor extends JComponent implements IFilterEditor {
     private Class modelClass;
     private boolean ignoreCase;
     private boolean enabledUI=true;
+    private boolean choicesDirty;
+    private boolean filtering;
 
     FilterArrowButton downButton = new FilterArrowButton();
     EditorFilter filter = new EditorFilter();
@@ -162,6 +173,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
     @Override public void resetFilter() {
         popup.clearHistory();
         setEditorContent(CustomChoice.MATCH_ALL);
+        editor.clearParserRowsCache();
         requestChoices();
     }
 
@@ -404,15 +416,66 @@ public class FilterEditor extends JComponent implements IFilterEditor {
 
     /** Method invoked by the FiltersHandler to set the choices. */
     public void setChoices(Collection<?> choices) {
+        choicesDirty = false;
         popup.clearChoices();
         addChoices(choices);
     }
 
+    /**
+     * Method invoked by the FiltersHandler to defer the computation of the
+     * choices, until they are needed.
+     */
+    public void setChoicesDirty() {
+        choicesDirty = true;
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to check if the choices are
+     * needed now: popup visible, or editing (used for autocompletion).
+     */
+    public boolean isChoicesInUse() {
+        return popup.isVisible() || isEditing();
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to extract first the choices
+     * displayed in the popup.
+     */
+    public boolean isPopupVisible() {
+        return popup.isVisible();
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to identify the expression
+     * producing the current filter; it is null if not known, otherwise it can
+     * be compared (equals) with previous expressions.
+     */
+    public Object getFilterExpression() {
+        return editor.getFilterExpression();
+    }
+
+    /**
+     * Method invoked by the FiltersHandler to check if the filter for a given
+     * expression can only include rows included by the filter for the base
+     * expression (both obtained from {@link #getFilterExpression()}).
+     */
+    public boolean isNarrowing(Object expression, Object base) {
+        return (expression instanceof EditorComponent.ParsedExpression)
+                && (base instanceof EditorComponent.ParsedExpression)
+                && ((EditorComponent.ParsedExpression) expression).isNarrowing(
+                    (EditorComponent.ParsedExpression) base);
+    }
+
     /** Method invoked by the FiltersHandler to setup the choices. */
     public int getChoicesSize() {
         return popup.getChoicesSize();
     }
 
+    /** Returns the choices currently displayed by the popup. */
+    public List<Object> getChoices() {
+        return popup.getChoices();
+    }
+
     /** Method invoked by the FiltersHandler to extend the choices. */
     public void addChoices(Collection<?> choices) {
         popup.addChoices(choices, editor.getChoicesParser());
@@ -423,6 +486,52 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         editor.setWarning(warning);
     }
 
+    /**
+     * Method called by the FiltersHandler to report changes in the table
+     * model, with the type and rows of the associated event.
+     */
+    public void tableUpdated(int eventType, int firstRow, int lastRow) {
+        editor.tableUpdated(eventType, firstRow, lastRow);
+    }
+
+    /**
+     * Method called by the FiltersHandler while the filters are evaluated in
+     * background, displaying then a wait cursor and the text as disabled; it
+     * fires the {@link #FILTERING_PROPERTY} on changes.
+     */
+    public void setFiltering(boolean filtering) {
+        if (this.filtering != filtering) {
+            this.filtering = filtering;
+            setCursor(filtering
+                    ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+            editor.setCursor(Cursor.getPredefinedCursor(
+                    filtering ? Cursor.WAIT_CURSOR : Cursor.TEXT_CURSOR));
+            editor.setFiltering(filtering);
+            firePropertyChange(FILTERING_PROPERTY, !filtering, filtering);
+        }
+    }
+
+    /**
+     * Returns true while the filters are evaluated in background, and the
+     * table does not yet reflect the current filter.
+     */
+    public boolean isFiltering() {
+        return filtering;
+    }
+
+    /** Returns the row filter the editor's filter delegates on, if any. */
+    public RowFilter getDelegateFilter() {
+        return filter.delegate;
+    }
+
+    /**
+     * Returns true if the current filter of the editor cannot be evaluated
+     * concurrently, see {@link ISequentialFilter}.
+     */
+    public boolean isSequentialFilter() {
+        return filter.delegate instanceof ISequentialFilter;
+    }
+
     /** Enables / disables the editor, invoked from the filter itself. */
     void setFilterEnabled(boolean enabled) {
     	enabled = enabled && enabledUI;
@@ -445,6 +554,14 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         return filter.attemptEditorFilterUpdate(editorFilter);
     }
 
+    /**
+     * Method invoked by the FiltersHandler to recreate the text parser, after
+     * a change in the parser model.
+     */
+    public void updateParser() {
+        editor.updateParser();
+    }
+
     /** Method invoked by the EditorComponent on request. */
     IParser createParser() {
         return getParserModel().createParser(this);
@@ -472,6 +589,14 @@ public class FilterEditor extends JComponent implements IFilterEditor {
         }
     }
 
+    /** Requests the choices to the filtersHandler, if they were deferred. */
+    private void requestDirtyChoices() {
+        if (choicesDirty && isEnabled()) {
+            choicesDirty = false;
+            filtersHandler.requestEditorChoices(this);
+        }
+    }
+
     private void formatOrComparatorUpdated() {
         ChoiceRenderer lcr = getRenderer();
         boolean updated;
@@ -514,6 +639,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
                 @Override public void focusGained(FocusEvent e) {
                     downButton.setFocused(true);
                     if (isEnabled()) {
+                        requestDirtyChoices();
                         editor.focusMoved(true);
                     }
                 }
@@ -546,6 +672,7 @@ public class FilterEditor extends JComponent implements IFilterEditor {
     /** Shows the popup menu, preselecting the best match. */
     boolean showChoices() {
         if (!popup.isVisible() && editor.isValid()) {
+            requestDirtyChoices();
             if (!popup.display(editor)) {
                 return false;
             }
@@ -936,6 +1063,9 @@ public class FilterEditor extends JComponent implements IFilterEditor {
 
                 if (toBeConsolidated) {
                     toBeConsolidated = false;
+                    // the user ends editing: the warning state must
+                    // reflect any filter update not yet applied
+                    filtersHandler.flushFilterUpdates();
 
                     boolean warning = filtersHandler.consolidateFilterChanges(
                             modelIndex);
@@ -36,6 +36,7 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.Format;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
@@ -114,6 +115,16 @@ abstract class PopupComponent implements PopupMenuListener {
         return choicesModel.getSize();
     }
 
+    /** Returns the current choices, in the displayed order. */
+    public List<Object> getChoices() {
+        List<Object> ret = new ArrayList<Object>(choicesModel.getSize());
+        for (int i = 0; i < choicesModel.getSize(); i++) {
+            ret.add(choicesModel.getElementAt(i));
+        }
+
+        return ret;
+    }
+
     /**
      * Adds content to the choices list.<br>
      * If there is no Renderer defined, the content is stringfied and sorted -so
@@ -0,0 +1,172 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.internal;
+
+import javax.swing.SwingUtilities;
+
+
+/**
+ * Support to evaluate a set of filters in an order adapted at runtime, as
+ * done by the {@link net.coderazzi.filters.ComposedFilter} and by the
+ * compiled filters of the filter header: the filters that decide faster the
+ * result are periodically moved first.<br>
+ * The statistics guiding this order are not synchronized: they are only
+ * gathered -and the order only changed- on the event dispatch thread. Any
+ * other thread evaluates the filters in the current order. The event
+ * dispatch thread is recognized once it has modified the filters, see
+ * {@link #captureStatisticsThread()}.<br>
+ * This class is not part of the public API.
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public final class EvaluationOrder {
+
+    /** Number of evaluations between each reordering of the filters. */
+    public static final int REORDER_PERIOD = 1 << 14;
+
+    /** Only one evaluation out of SAMPLE_MASK + 1 is timed. */
+    public static final int SAMPLE_MASK = 0xf;
+
+    /** Average cost, in nanoseconds, assumed for a filter not timed yet. */
+    public static final double UNKNOWN_COST = 100;
+
+    /** The last event dispatch thread that modified the filters. */
+    private static volatile Thread dispatchThread;
+
+    private EvaluationOrder() {
+        // static support only
+    }
+
+    /**
+     * Returns the expected cost for a filter to decide the result, as its
+     * average cost divided by the (smoothed) probability of being decisive.
+     * The filters are evaluated in increasing rank.
+     */
+    public static double getRank(double cost,
+                                 long   evaluations,
+                                 long   decisions) {
+        return cost * (evaluations + 2) / (decisions + 1);
+    }
+
+    /**
+     * Records the current thread as the one gathering statistics, if it is
+     * the event dispatch thread. It is invoked on each filter change, so that
+     * the check is not done on each evaluation.
+     */
+    public static void captureStatisticsThread() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            dispatchThread = Thread.currentThread();
+        }
+    }
+
+    /**
+     * Returns true if the current thread can gather statistics and change
+     * the evaluation order, that is, if it is the last event dispatch thread
+     * that modified the filters.
+     */
+    public static boolean isStatisticsThread() {
+        return Thread.currentThread() == dispatchThread;
+    }
+
+    /** Evaluation statistics of a filter inside a composition. */
+    public static class Statistics {
+        private long evaluations;
+        private long decisions;
+        private long sampled;
+        private long nanos;
+        private double cost = UNKNOWN_COST;
+        private double rank = EvaluationOrder.getRank(UNKNOWN_COST, 0, 0);
+
+        protected Statistics() {
+        }
+
+        protected Statistics(Statistics stats) {
+            this.evaluations = stats.evaluations;
+            this.decisions = stats.decisions;
+            this.sampled = stats.sampled;
+            this.nanos = stats.nanos;
+            this.cost = stats.cost;
+            this.rank = stats.rank;
+        }
+
+        /** Returns the (recent) number of evaluations of the filter. */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Returns the (recent) number of evaluations where the filter
+         * decided the composed result: rejections for AND, acceptances for
+         * OR.
+         */
+        public long getDecisions() {
+            return decisions;
+        }
+
+        /**
+         * Returns the average evaluation time, in nanoseconds. If there are
+         * no timed evaluations, it is the last average known, or an assumed
+         * cost if the filter was never timed.
+         */
+        public double getAverageCost() {
+            return (sampled == 0) ? cost : ((double) nanos / sampled);
+        }
+
+        /** Returns the rank computed on the last {@link #updateRank()}. */
+        public double getRank() {
+            return rank;
+        }
+
+        /** Records an evaluation, and whether it decided the result. */
+        public void evaluated(boolean decided) {
+            evaluations++;
+            if (decided) {
+                decisions++;
+            }
+        }
+
+        /** Records the time taken by a (sampled) evaluation. */
+        public void timed(long elapsed) {
+            nanos += elapsed;
+            sampled++;
+        }
+
+        /**
+         * Computes the rank of the filter, see {@link
+         * EvaluationOrder#getRank(double, long, long)}, and then halves the
+         * statistics, so that older evaluations weigh less on the next
+         * reordering; the average cost is kept.
+         */
+        public void updateRank() {
+            cost = getAverageCost();
+            rank = EvaluationOrder.getRank(cost, evaluations, decisions);
+            evaluations >>= 1;
+            decisions >>= 1;
+            sampled >>= 1;
+            nanos >>= 1;
+        }
+    }
+}
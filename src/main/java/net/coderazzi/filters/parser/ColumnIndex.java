@@ -0,0 +1,212 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.BitSet;
+
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+
+/**
+ * Index on the values of a column, used to resolve filters without
+ * evaluating each row.<br>
+ * The index is built on first use, from the model being filtered, and it is
+ * maintained with the table model events reported to the {@link Parser}. It is
+ * only used on the event dispatch thread, which receives those events; filters
+ * evaluated on other threads check the rows one by one.
+ */
+abstract class ColumnIndex {
+
+    /** Events updating more rows just drop the index, built again later. */
+    private static final int MAX_UPDATED_ROWS = 256;
+
+    /**
+     * Rows checked one by one after a change, before resolving a filter with
+     * the index: events on a few rows are not worth a new selection.
+     */
+    private static final int SCAN_ROWS = 1024;
+
+    int column;
+    int version;
+
+    /** Model whose values are indexed, null if the index is not built. */
+    TableModel model;
+    int rowCount;
+
+    /** Version whose index could not be built. */
+    private int failedVersion = -1;
+
+    ColumnIndex(int column) {
+        this.column = column;
+    }
+
+    /** Reports a table model event, see {@link Parser#tableUpdated}. */
+    void tableUpdated(int eventType, int firstRow, int lastRow) {
+        ++version;
+        if (model != null) {
+            try {
+                if ((firstRow < 0) || (lastRow - firstRow >= MAX_UPDATED_ROWS)
+                        || (firstRow > rowCount)) {
+                    clear();
+                } else if (eventType == TableModelEvent.INSERT) {
+                    rowCount += lastRow - firstRow + 1;
+                    insertRows(firstRow, lastRow - firstRow + 1);
+                } else if (lastRow >= rowCount) {
+                    clear();
+                } else if (eventType == TableModelEvent.DELETE) {
+                    rowCount -= lastRow - firstRow + 1;
+                    deleteRows(firstRow, lastRow - firstRow + 1);
+                } else {
+                    updateRows(firstRow, lastRow - firstRow + 1);
+                }
+            } catch (RuntimeException ex) {
+                // comparator failure, or values modified in place
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Ensures that the index is built for the given model, returning false if
+     * it cannot be built.
+     */
+    boolean prepare(TableModel model) {
+        if ((this.model == model) && (rowCount == model.getRowCount())) {
+            return true;
+        }
+
+        if ((this.model == null) && (failedVersion == version)) {
+            return false;
+        }
+
+        clear();
+        try {
+            this.model = model;
+            rowCount = model.getRowCount();
+            build();
+
+            return true;
+        } catch (RuntimeException ex) {
+            // values cannot be handled, like not comparable values
+            clear();
+            failedVersion = version;
+
+            return false;
+        }
+    }
+
+    /** Discards the index. */
+    void clear() {
+        model = null;
+        rowCount = 0;
+    }
+
+    /** Builds the index for the current model. */
+    abstract void build();
+
+    /** Updates the index after inserting rows; rowCount is already updated. */
+    abstract void insertRows(int firstRow, int count);
+
+    /** Updates the index after deleting rows; rowCount is already updated. */
+    abstract void deleteRows(int firstRow, int count);
+
+    /** Updates the index after updating the values of the given rows. */
+    abstract void updateRows(int firstRow, int count);
+
+    /**
+     * Filter using the index while evaluated on the event dispatch thread
+     * where it is created; it delegates otherwise to the row by row filter.
+     */
+    abstract class IndexedFilter extends RowFilter {
+        private RowFilter filter;
+        private boolean verify;
+        private boolean unselected;
+        private Thread thread;
+
+        /** Rows selected, if resolved for the current index version. */
+        private BitSet selection;
+        private Object selectionModel;
+        private int selectionVersion = -1;
+        private int scannedRows;
+
+        /**
+         * Constructor.
+         *
+         * @param  filter      the row by row filter
+         * @param  verify      true if the selected rows must be still checked
+         *                     with the filter, false to resolve them directly
+         *                     -as the opposite of the unselected rows-
+         * @param  unselected  the result for the rows not selected
+         */
+        IndexedFilter(RowFilter filter, boolean verify, boolean unselected) {
+            this.filter = filter;
+            this.verify = verify;
+            this.unselected = unselected;
+            if (SwingUtilities.isEventDispatchThread()) {
+                thread = Thread.currentThread();
+            }
+        }
+
+        /** Returns the rows selected in the model, or null if unknown. */
+        abstract BitSet select(TableModel model);
+
+        @Override public boolean include(Entry entry) {
+            if (Thread.currentThread() == thread) {
+                Object model = entry.getModel();
+                if ((selectionVersion != version)
+                        || (selectionModel != model)) {
+                    selection = null;
+                    selectionModel = model;
+                    selectionVersion = version;
+                    scannedRows = 0;
+                }
+
+                if ((selection == null) && (++scannedRows == SCAN_ROWS)
+                        && (model instanceof TableModel)) {
+                    selection = select((TableModel) model);
+                }
+
+                if (selection != null) {
+                    Object id = entry.getIdentifier();
+                    if (id instanceof Integer) {
+                        if (!selection.get((Integer) id)) {
+                            return unselected;
+                        }
+
+                        if (!verify) {
+                            return !unselected;
+                        }
+                    }
+                }
+            }
+
+            return filter.include(entry);
+        }
+    }
+}
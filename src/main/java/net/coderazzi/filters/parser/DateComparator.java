@@ -124,24 +124,32 @@ abstract public class DateComparator implements Comparator<Date> {
         }
     }
 
-    /** DateComparator that simply compares the year's fields. */
+    /**
+     * DateComparator that simply compares the year's fields.<br>
+     * Calendar instances are not thread safe: each thread uses its own copy.
+     */
     static class YearComparator extends DateComparator {
-        Calendar calendar;
-
-        public YearComparator(Calendar calendar) {
-            this.calendar = calendar;
+        private ThreadLocal<Calendar> calendars;
+
+        public YearComparator(final Calendar calendar) {
+            calendars = new ThreadLocal<Calendar>() {
+                    @Override protected Calendar initialValue() {
+                        return (Calendar) calendar.clone();
+                    }
+                };
         }
 
         @Override public long diff(Date o1, Date o2) {
+            Calendar calendar = calendars.get();
             calendar.setTime(o1);
 
-            long base = time();
+            long base = time(calendar);
             calendar.setTime(o2);
 
-            return base - time();
+            return base - time(calendar);
         }
 
-        long time() {
+        long time(Calendar calendar) {
             return calendar.get(Calendar.YEAR);
         }
     }
@@ -152,7 +160,7 @@ abstract public class DateComparator implements Comparator<Date> {
             super(calendar);
         }
 
-        @Override long time() {
+        @Override long time(Calendar calendar) {
             return (calendar.get(Calendar.YEAR) * 12)
                     + calendar.get(Calendar.MONTH);
         }
@@ -164,7 +172,7 @@ abstract public class DateComparator implements Comparator<Date> {
             super(calendar);
         }
 
-        @Override long time() {
+        @Override long time(Calendar calendar) {
             return (calendar.get(Calendar.YEAR) * 400)
                     + calendar.get(Calendar.DAY_OF_YEAR);
         }
@@ -0,0 +1,158 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.RowFilter;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.parser.Parser.FormatWrapper;
+
+
+/**
+ * {@link ColumnIndex} associating each value of the column -or its string, as
+ * matched by the filters- to the rows holding it.<br>
+ * Equality filters are then resolved by a single lookup.
+ */
+class HashIndex extends PostingsIndex {
+
+    private boolean strings;
+
+    /** Rows with each key, as identifiers. */
+    private Map<Object, Postings> postings;
+
+    /** Class of the non null values, if all share the same class. */
+    private Class valuesClass;
+    private boolean mixedClasses;
+
+    /** Creates an index on the values of the column. */
+    HashIndex(int column) {
+        super(column, null, false);
+    }
+
+    /**
+     * Creates an index on the strings of the column, as obtained from the
+     * given format, folded if required.
+     */
+    HashIndex(int column, FormatWrapper format, boolean fold) {
+        super(column, format, fold);
+        this.strings = true;
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one, which
+     * includes the rows with the given key -or those without it, if equals
+     * is false-.<br>
+     * If a class is given, the index is only used if all the values of the
+     * column belong to that class.
+     */
+    RowFilter createFilter(RowFilter filter,
+                           Object    key,
+                           Class     required,
+                           boolean   equals) {
+        return new HashFilter(filter, key, required, equals);
+    }
+
+    /**
+     * Returns the rows with the given key, or null if the index cannot be
+     * built for the given model, or its values do not belong to the required
+     * class.
+     */
+    BitSet select(TableModel model, Object key, Class required) {
+        if (!prepare(model)) {
+            return null;
+        }
+
+        if ((required != null)
+                && (mixedClasses
+                    || ((valuesClass != null) && (valuesClass != required)))) {
+            return null;
+        }
+
+        Postings list = postings.get(key);
+
+        return (list == null) ? new BitSet(rowCount)
+                              : getRows(list.ids, list.size);
+    }
+
+    @Override void build() {
+        postings = new HashMap<Object, Postings>();
+        super.build();
+    }
+
+    @Override void clear() {
+        super.clear();
+        postings = null;
+        valuesClass = null;
+        mixedClasses = false;
+    }
+
+    @Override void index(int row, int id) {
+        Object key;
+        if (strings) {
+            key = getString(row);
+        } else {
+            key = model.getValueAt(row, column);
+            if (key != null) {
+                if (valuesClass == null) {
+                    valuesClass = key.getClass();
+                } else if (valuesClass != key.getClass()) {
+                    mixedClasses = true;
+                }
+            }
+        }
+
+        Postings list = postings.get(key);
+        if (list == null) {
+            list = new Postings();
+            postings.put(key, list);
+        }
+
+        list.add(id);
+    }
+
+    /** Filter resolved with the rows holding its key. */
+    class HashFilter extends IndexedFilter {
+        private Object key;
+        private Class required;
+
+        HashFilter(RowFilter filter,
+                   Object    key,
+                   Class     required,
+                   boolean   equals) {
+            super(filter, false, !equals);
+            this.key = key;
+            this.required = required;
+        }
+
+        @Override BitSet select(TableModel model) {
+            return HashIndex.this.select(model, key, required);
+        }
+    }
+}
@@ -26,17 +26,24 @@
 package net.coderazzi.filters.parser;
 
 import java.text.Format;
+import java.text.Normalizer;
 import java.text.ParseException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import javax.swing.RowFilter;
+import javax.swing.event.TableModelEvent;
 
+import net.coderazzi.filters.INumericTableModel;
 import net.coderazzi.filters.IParser;
 
 
@@ -76,36 +83,207 @@ import net.coderazzi.filters.IParser;
  * </ul>
  *
  * <p>In addition, providing no operator will behave as the operator ~</p>
+ *
+ * <p>The string representation of each row is cached, as long as the row's
+ * value does not change; the parser must be then informed of updates on the
+ * table model, see {@link #tableUpdated(int, int, int)}. These strings are
+ * released with {@link #clearRowsCache()}.</p>
+ *
+ * <p>When ignoring case or accents, the wildcard operators match exactly the
+ * folded forms of the expression and of the strings: lower case, and without
+ * diacritical marks.</p>
+ *
+ * <p>The filters created for the last expressions are cached, see {@link
+ * #clearCache()}.</p>
+ *
+ * <p>Comparison operators can be resolved with a sorted index of the column
+ * values, see {@link #setRangeIndex(boolean)}, and the wildcard operators
+ * with an index of the trigrams of the column strings, see {@link
+ * #setTextIndex(boolean)}; equality operators and exact expressions can be
+ * resolved with a hash index of the column values, see {@link
+ * #setHashIndex(boolean)}.</p>
+ *
+ * <p>Comparisons on Integer, Long, Float or Double columns using the {@link
+ * #NATURAL_COMPARATOR} are performed on primitive values; table models can
+ * avoid boxing those values by implementing {@link INumericTableModel}.</p>
+ *
+ * <p>Expressions can be parsed, and the filters created evaluated, on several
+ * threads at once; the indexes are only used on the event dispatch thread.
+ * The settings of the parser are expected to change only on that thread, and
+ * never while the filters are evaluated.</p>
  */
 public class Parser implements IParser {
 
+    /**
+     * {@link Comparator} following the natural order of {@link Comparable}
+     * instances; comparisons of numbers using it are evaluated on their
+     * primitive values.
+     */
+    public static final Comparator NATURAL_COMPARATOR =
+        new Comparator<Comparable>() {
+            @Override public int compare(Comparable o1, Comparable o2) {
+                return o1.compareTo(o2);
+            }
+        };
+
+    /** Case dependent {@link Comparator} of strings. */
+    public static final Comparator<String> STRING_COMPARATOR =
+        new Comparator<String>() {
+            @Override public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+        };
+
+    /** {@link Comparator} of strings ignoring case. */
+    public static final Comparator<String> IGNORE_CASE_STRING_COMPARATOR =
+        new Comparator<String>() {
+            @Override public int compare(String o1, String o2) {
+                return o1.compareToIgnoreCase(o2);
+            }
+        };
+
     FormatWrapper format;
     Comparator comparator;
     boolean ignoreCase;
+    boolean ignoreAccents;
     Comparator<String> stringComparator;
     int modelIndex;
+    RangeIndex rangeIndex;
+    TextIndex textIndex;
+    HashIndex valueIndex;
+    HashIndex stringIndex;
+    private ExpressionsCache<RowFilter> filters =
+        new ExpressionsCache<RowFilter>();
+    private ExpressionsCache<InstantFilter> instantFilters =
+        new ExpressionsCache<InstantFilter>();
     static HtmlHandler htmlHandler = new HtmlHandler();
     private static Map<String, IOperand> operands;
     private static IOperand wildcardOperand;
     private static WildcardOperand instantOperand;
     private static Pattern expressionMatcher;
-    private static StringBuilder escapeBuffer = new StringBuilder();
 
     public Parser(Format             format,
                   Comparator         classComparator,
                   Comparator<String> stringComparator,
                   boolean            ignoreCase,
                   int                modelIndex) {
-        this.format = new FormatWrapper(format);
+        this.format = new FormatWrapper(format, ignoreCase);
         this.comparator = classComparator;
         this.stringComparator = stringComparator;
         this.ignoreCase = ignoreCase;
         this.modelIndex = modelIndex;
     }
 
+    /**
+     * Sets whether to ignore the accents -diacritical marks- of the strings;
+     * it is false by default.
+     */
+    public void setIgnoreAccents(boolean set) {
+        if (ignoreAccents != set) {
+            ignoreAccents = set;
+            format.setFolding(ignoreCase, set);
+            if (textIndex != null) {
+                textIndex = createTextIndex();
+            }
+
+            if (stringIndex != null) {
+                stringIndex = createStringIndex();
+            }
+
+            clearCache();
+        }
+    }
+
+    /** Returns true if the accents of the strings are ignored. */
+    public boolean isIgnoreAccents() {
+        return ignoreAccents;
+    }
+
+    /**
+     * Sets whether to resolve the comparison operators using a sorted index
+     * of the column values; it is false by default.<br>
+     * The index is only valid if the parser is informed of all the table
+     * model updates, see {@link #tableUpdated(int, int, int)}.
+     */
+    public void setRangeIndex(boolean set) {
+        if (set != isRangeIndex()) {
+            rangeIndex = (set && (comparator != null))
+                ? new RangeIndex(modelIndex, comparator) : null;
+            clearCache();
+        }
+    }
+
+    /** Returns true if the comparison operators use a range index. */
+    public boolean isRangeIndex() {
+        return rangeIndex != null;
+    }
+
+    /**
+     * Sets whether to resolve the wildcard operators using an index of the
+     * trigrams of the column strings; it is false by default.<br>
+     * The index is only valid if the parser is informed of all the table
+     * model updates, see {@link #tableUpdated(int, int, int)}.
+     */
+    public void setTextIndex(boolean set) {
+        if (set != isTextIndex()) {
+            textIndex = set ? createTextIndex() : null;
+            clearCache();
+        }
+    }
+
+    /** Returns true if the wildcard operators use a trigrams index. */
+    public boolean isTextIndex() {
+        return textIndex != null;
+    }
+
+    private TextIndex createTextIndex() {
+        return new TextIndex(modelIndex, format, ignoreCase || ignoreAccents);
+    }
+
+    /**
+     * Sets whether to resolve the equality operators -and the expressions
+     * without wildcards- using a hash index of the column values; it is false
+     * by default.<br>
+     * The index is only valid if the parser is informed of all the table
+     * model updates, see {@link #tableUpdated(int, int, int)}.
+     */
+    public void setHashIndex(boolean set) {
+        if (set != isHashIndex()) {
+            valueIndex = set ? new HashIndex(modelIndex) : null;
+            stringIndex = set ? createStringIndex() : null;
+            clearCache();
+        }
+    }
+
+    /** Returns true if the equality operators use a hash index. */
+    public boolean isHashIndex() {
+        return valueIndex != null;
+    }
+
+    private HashIndex createStringIndex() {
+        return new HashIndex(modelIndex, format, ignoreCase || ignoreAccents);
+    }
+
     /** {@link IParser} interface. */
     @Override public RowFilter parseText(String expression)
             throws ParseException {
+        RowFilter ret;
+        synchronized (filters) {
+            ret = filters.get(expression);
+        }
+
+        if (ret == null) {
+            ret = createFilter(expression);
+            synchronized (filters) {
+                filters.put(expression, ret);
+            }
+        }
+
+        return ret;
+    }
+
+    /** Creates the filter for {@link #parseText(String)}. */
+    private RowFilter createFilter(String expression) throws ParseException {
         Matcher matcher = expressionMatcher.matcher(expression);
         if (matcher.matches()) {
             // all expressions match!
@@ -124,6 +302,29 @@ public class Parser implements IParser {
     /** {@link IParser} interface. */
     @Override public InstantFilter parseInstantText(String expression)
             throws ParseException {
+        InstantFilter cached;
+        synchronized (instantFilters) {
+            cached = instantFilters.get(expression);
+        }
+
+        if (cached == null) {
+            cached = createInstantFilter(expression);
+            synchronized (instantFilters) {
+                instantFilters.put(expression, cached);
+            }
+        }
+
+        // InstantFilter instances are mutable, do not expose the cached one
+        InstantFilter ret = new InstantFilter();
+        ret.filter = cached.filter;
+        ret.expression = cached.expression;
+
+        return ret;
+    }
+
+    /** Creates the filter for {@link #parseInstantText(String)}. */
+    private InstantFilter createInstantFilter(String expression)
+            throws ParseException {
         expression = expression.trim();
         Matcher matcher = expressionMatcher.matcher(expression);
         if (matcher.matches()) {
@@ -145,6 +346,20 @@ public class Parser implements IParser {
         throw new ParseException("", 0);
     }
 
+    /**
+     * Discards the filters cached for the last parsed expressions; it must be
+     * called if any setting affecting the parsing changes.
+     */
+    public void clearCache() {
+        synchronized (filters) {
+            filters.clear();
+        }
+
+        synchronized (instantFilters) {
+            instantFilters.clear();
+        }
+    }
+
     protected String getInstantAppliedExpression(String expression) {
         return instantOperand.getAppliedExpression(expression);
     }
@@ -163,6 +378,155 @@ public class Parser implements IParser {
         return htmlHandler.stripHtml(expression);
     }
 
+    /**
+     * Returns true if the filter obtained for the expression (on normal or
+     * instant mode) can only include rows included by the filter obtained
+     * on instant mode for the base expression.<br>
+     * This is only known for literal expressions (no operators, no
+     * wildcards) handled by the default operators: the instant filter of the
+     * base matches any text containing it.
+     */
+    public boolean isNarrowing(String base, String expression) {
+        if ((getDefaultOperator(true) != instantOperand)
+                || (getDefaultOperator(false) != wildcardOperand)) {
+            return false;
+        }
+
+        base = base.trim();
+        expression = expression.trim();
+
+        return isLiteral(base) && isLiteral(expression)
+                && expression.contains(base);
+    }
+
+    /** Returns true if the expression has no operators or wildcards. */
+    private boolean isLiteral(String expression) {
+        Matcher matcher = expressionMatcher.matcher(expression);
+        if (!matcher.matches() || (matcher.group(1) != null)) {
+            return false;
+        }
+
+        for (int i = expression.length() - 1; i >= 0; i--) {
+            char ch = expression.charAt(i);
+            if ((ch == '*') || (ch == '?') || (ch == '\\')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reports a change in the table model, with the type and rows of the
+     * associated {@link TableModelEvent}, so that any information cached for
+     * those rows is discarded.
+     */
+    public void tableUpdated(int eventType, int firstRow, int lastRow) {
+        format.tableUpdated(eventType, firstRow, lastRow);
+        if (rangeIndex != null) {
+            rangeIndex.tableUpdated(eventType, firstRow, lastRow);
+        }
+
+        if (textIndex != null) {
+            textIndex.tableUpdated(eventType, firstRow, lastRow);
+        }
+
+        if (valueIndex != null) {
+            valueIndex.tableUpdated(eventType, firstRow, lastRow);
+            stringIndex.tableUpdated(eventType, firstRow, lastRow);
+        }
+    }
+
+    /**
+     * Discards the strings cached for each row, releasing their memory; they
+     * are cached again as the rows are filtered.
+     */
+    public void clearRowsCache() {
+        format.clear();
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one -which
+     * includes the rows whose value is less, equal and/or greater than the
+     * operand, or null- resolved with the range index, if enabled.
+     */
+    RowFilter indexed(RowFilter filter,
+                      Object    right,
+                      boolean   less,
+                      boolean   equal,
+                      boolean   greater,
+                      boolean   nulls) {
+        return (rangeIndex == null)
+            ? filter
+            : rangeIndex.createFilter(filter, right, less, equal, greater,
+                nulls);
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one -which
+     * matches, or not, the given wildcard expression, with only '*' as
+     * wildcard- resolved with the trigrams index, if enabled.
+     */
+    RowFilter indexed(RowFilter filter, String expression, boolean equals) {
+        return (textIndex == null)
+            ? filter : textIndex.createFilter(filter, expression, equals);
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one -which
+     * includes the rows whose value is equal, or not, to the given one, or
+     * null- resolved with the hash index, if enabled.<br>
+     * The index is only used for values whose comparison is consistent with
+     * their equality, and only if the column holds no values of other
+     * classes.
+     */
+    RowFilter valueIndexed(RowFilter filter, Object value, boolean equals) {
+        if (valueIndex == null) {
+            return filter;
+        }
+
+        Class required = null;
+        if (value != null) {
+            if ((comparator != NATURAL_COMPARATOR) || !isHashable(value)) {
+                return filter;
+            }
+
+            required = value.getClass();
+        }
+
+        return valueIndex.createFilter(filter, value, required, equals);
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one -which
+     * includes the rows whose string, folded if ignoring case or accents, is
+     * equal, or not, to the given one- resolved with the hash index, if
+     * enabled.
+     */
+    RowFilter stringIndexed(RowFilter filter, String key, boolean equals) {
+        return (stringIndex == null)
+            ? filter : stringIndex.createFilter(filter, key, null, equals);
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one -which
+     * includes the rows whose value equals the given one, or is null if the
+     * value is null- resolved with the hash index, if enabled.
+     */
+    public RowFilter indexEquals(RowFilter filter, Object value) {
+        return (valueIndex == null)
+            ? filter : valueIndex.createFilter(filter, value, null, true);
+    }
+
+    /** Returns true if the natural order of the value matches equality. */
+    private static boolean isHashable(Object value) {
+        return (value instanceof Integer) || (value instanceof Long)
+                || (value instanceof Short) || (value instanceof Byte)
+                || (value instanceof Double) || (value instanceof Float)
+                || (value instanceof Character) || (value instanceof Boolean)
+                || (value instanceof Enum);
+    }
+
     /** {@link IParser} interface. */
     @Override public String escape(String expression) {
         expression = expression.trim();
@@ -170,6 +534,7 @@ public class Parser implements IParser {
         if (matcher.matches()) {
             String operator = matcher.group(1);
             int lastAdded = 0;
+            StringBuilder escapeBuffer = new StringBuilder();
             if (operator != null) {
                 escapeBuffer.append('\\').append(operator);
                 expression = matcher.group(2);
@@ -188,7 +553,6 @@ public class Parser implements IParser {
             if (escapeBuffer.length() > 0) {
                 escapeBuffer.append(expression.substring(lastAdded, total));
                 expression = escapeBuffer.toString();
-                escapeBuffer.delete(0, escapeBuffer.length());
             }
         }
 
@@ -211,12 +575,15 @@ public class Parser implements IParser {
             if (right != null) {
                 if (self.comparator == null) {
                     return createStringOperator(right, self.modelIndex,
-                            self.format, self.stringComparator);
+                            self.format, self.stringComparator,
+                            self.ignoreAccents);
                 }
 
                 Object o = self.format.parseObject(right);
                 if (o != null) {
-                    return createOperator(o, self.modelIndex, self.comparator);
+                    return self.indexed(createOperator(o, self.modelIndex,
+                                self.comparator), o, matches(-1), matches(0),
+                            matches(1), false);
                 }
             }
 
@@ -227,6 +594,18 @@ public class Parser implements IParser {
         private RowFilter createOperator(final Object     right,
                                          final int        modelIndex,
                                          final Comparator comparator) {
+            final NumericOperand numeric = NumericOperand.create(right,
+                    comparator);
+            if (numeric != null) {
+                return new RowFilter() {
+                    @Override public boolean include(Entry entry) {
+                        int comparison = numeric.compare(entry, modelIndex);
+                        return (comparison != NumericOperand.NULL)
+                                && matches(comparison);
+                    }
+                };
+            }
+
             return new RowFilter() {
                 @Override public boolean include(Entry entry) {
                     Object left = entry.getValue(modelIndex);
@@ -241,10 +620,12 @@ public class Parser implements IParser {
 
         /** Operator invalid for given type, filter by string representation. */
         private RowFilter createStringOperator(
-                final String        right,
+                String              expression,
                 final int           modelIndex,
                 final FormatWrapper format,
-                final Comparator    stringComparator) {
+                final Comparator    stringComparator,
+                final boolean       fold) {
+            final String right = fold ? format.fold(expression) : expression;
             return new RowFilter() {
                 @Override public boolean include(Entry entry) {
                     Object left = entry.getValue(modelIndex);
@@ -252,7 +633,8 @@ public class Parser implements IParser {
                         return false;
                     }
 
-                    String s = format.format(left);
+                    String s = fold ? format.fold(left, entry)
+                                    : format.format(left, entry);
 
                     return (s.length() > 0)
                             && matches(stringComparator.compare(s, right));
@@ -280,12 +662,23 @@ public class Parser implements IParser {
         @Override public RowFilter create(Parser self, String right)
                 throws ParseException {
             if (self.comparator == null) {
-                return createStringOperator(right, self.modelIndex, self.format,
-                        self.stringComparator);
+                RowFilter ret = createStringOperator(right, self.modelIndex,
+                        self.format, self.stringComparator, self.ignoreAccents);
+                // the index only knows the equality of the folded strings
+                if (self.stringComparator != (self.ignoreCase
+                            ? IGNORE_CASE_STRING_COMPARATOR
+                            : STRING_COMPARATOR)) {
+                    return ret;
+                }
+
+                return self.stringIndexed(ret,
+                        (self.ignoreCase || self.ignoreAccents)
+                            ? self.format.fold(right) : right, expected);
             }
 
             if (right.length() == 0) {
-                return createNullOperator(self.modelIndex);
+                return self.valueIndexed(createNullOperator(self.modelIndex),
+                        null, expected);
             }
 
             Object o = self.format.parseObject(right);
@@ -293,13 +686,28 @@ public class Parser implements IParser {
                 throw new ParseException("", 0);
             }
 
-            return createOperator(o, self.modelIndex, self.comparator);
+            RowFilter ret = self.indexed(createOperator(o, self.modelIndex,
+                        self.comparator), o, !expected, expected, !expected,
+                    !expected);
+
+            return self.valueIndexed(ret, o, expected);
         }
 
         /** Operator fine for given type, apply it. */
         private RowFilter createOperator(final Object     right,
                                          final int        modelIndex,
                                          final Comparator comparator) {
+            final NumericOperand numeric = NumericOperand.create(right,
+                    comparator);
+            if (numeric != null) {
+                return new RowFilter() {
+                    @Override public boolean include(Entry entry) {
+                        return expected
+                                == (0 == numeric.compare(entry, modelIndex));
+                    }
+                };
+            }
+
             return new RowFilter() {
                 @Override public boolean include(Entry entry) {
                     Object left = entry.getValue(modelIndex);
@@ -326,16 +734,19 @@ public class Parser implements IParser {
 
         /** Operator invalid for given type, filter by string representation. */
         private RowFilter createStringOperator(
-                final String        right,
+                String              expression,
                 final int           modelIndex,
                 final FormatWrapper format,
-                final Comparator    stringComparator) {
+                final Comparator    stringComparator,
+                final boolean       fold) {
+            final String right = fold ? format.fold(expression) : expression;
             return new RowFilter() {
                 @Override public boolean include(Entry entry) {
                     Object left = entry.getValue(modelIndex);
-                    String value = format.format(left);
+                    String value = fold ? format.fold(left, entry)
+                                        : format.format(left, entry);
 
-                    return expected = (stringComparator.compare(value, right)
+                    return expected == (stringComparator.compare(value, right)
                             == 0);
                 }
             };
@@ -359,7 +770,11 @@ public class Parser implements IParser {
         /** {@link IOperand} interface. */
         @Override public RowFilter create(Parser self, String right)
                 throws ParseException {
-            final Pattern pattern = getPattern(right, self.ignoreCase);
+            // a regular expression cannot be folded, only its accents removed
+            final boolean ignoreAccents = self.ignoreAccents;
+            final Pattern pattern = getPattern(
+                    ignoreAccents ? stripAccents(right) : right,
+                    self.ignoreCase);
             final int modelIndex = self.modelIndex;
             final FormatWrapper format = self.format;
 
@@ -367,7 +782,10 @@ public class Parser implements IParser {
 
                 @Override public boolean include(Entry entry) {
                     Object o = entry.getValue(modelIndex);
-                    String left = format.format(o);
+                    String left = format.format(o, entry);
+                    if (ignoreAccents) {
+                        left = stripAccents(left);
+                    }
 
                     return equals == pattern.matcher(left).matches();
                 }
@@ -395,7 +813,6 @@ public class Parser implements IParser {
     static protected class WildcardOperand extends REOperand {
 
         private boolean instantMode;
-        private int instantApplied;
 
         /** Constructor for equal/unequal simple regular expression. */
         public WildcardOperand(boolean equals) {
@@ -407,12 +824,52 @@ public class Parser implements IParser {
             this.instantMode = instantMode;
         }
 
+        /** {@link IOperand} interface. */
+        @Override public RowFilter create(Parser self, String right)
+                throws ParseException {
+            // the folded strings are matched exactly, which is faster
+            final boolean fold = self.ignoreCase || self.ignoreAccents;
+            final FormatWrapper format = self.format;
+            if (fold) {
+                right = format.fold(right);
+            }
+
+            String re = convertToRE(right);
+            String applied = getAppliedExpression(right);
+            final LiteralMatcher literal = LiteralMatcher.create(applied);
+            final Pattern pattern = (literal == null)
+                ? super.getPattern(re, false) : null;
+            final int modelIndex = self.modelIndex;
+
+            RowFilter ret = new RowFilter() {
+
+                @Override public boolean include(Entry entry) {
+                    Object o = entry.getValue(modelIndex);
+                    String left = fold ? format.fold(o, entry)
+                                       : format.format(o, entry);
+
+                    return equals == ((literal == null)
+                            ? pattern.matcher(left).matches()
+                            : literal.matches(left));
+                }
+            };
+
+            if (literal == null) {
+                return ret;
+            }
+
+            return ((self.stringIndex != null)
+                    && (literal instanceof LiteralMatcher.Exact))
+                ? self.stringIndexed(ret, applied, equals)
+                : self.indexed(ret, applied, equals);
+        }
+
         /**
          * After the operand is used, this method returns the expression that
          * has been really applied to obtain the filter.
          */
         public String getAppliedExpression(String baseExpression) {
-            switch(instantApplied) {
+            switch (getInstantApplied(convertWildcards(baseExpression))) {
                 case 0:
                     return baseExpression;
                 case 1:
@@ -434,9 +891,42 @@ public class Parser implements IParser {
 
         /** Converts a wildcard expression into a regular expression. */
         protected String convertToRE(String s) {
+            String ret = convertWildcards(s);
+            switch (getInstantApplied(ret)) {
+                case 1:
+                    return ".*" + ret;
+                case 2:
+                    return ret + ".*";
+                case 3:
+                    return ".*" + ret + ".*";
+            }
+            return ret;
+        }
+
+        /**
+         * Returns the wildcards added on instant mode to the given regular
+         * expression: 1 if '*' is prepended, 2 if appended, 3 for both.
+         */
+        private int getInstantApplied(String re) {
+            if (!instantMode) {
+                return 0;
+            }
+
+            int l = re.length();
+            if (l < 2) {
+                return 3;
+            }
+
+            return (re.startsWith(".*") ? 0 : 1) + (re.endsWith(".*") ? 0 : 2);
+        }
+
+        /**
+         * Converts a wildcard expression into a regular expression, without
+         * the wildcards added on instant mode.
+         */
+        private String convertWildcards(String s) {
             StringBuilder sb = new StringBuilder();
             boolean escaped = false;
-            instantApplied = 0;
 
             for (char c : s.toCharArray()) {
 
@@ -492,28 +982,314 @@ public class Parser implements IParser {
                 sb.append("\\\\");
             }
 
-            if (instantMode) {
-                int l = sb.length();
-                boolean okStart, okEnd;
-                if (l < 2) {
-                    okStart = okEnd = false;
-                } else {
-                    okStart = sb.substring(0, 2).equals(".*");
-                    okEnd = sb.substring(l - 2).equals(".*");
+            return sb.toString();
+        }
+
+    }
+
+    /**
+     * LRU cache of the results of parsing the last expressions, so that
+     * expressions recently used -like those on the history- are not parsed
+     * again.
+     */
+    static class ExpressionsCache<T> extends LinkedHashMap<String, T> {
+
+        private static final long serialVersionUID = 3405926718217823941L;
+
+        /** Number of expressions kept. */
+        static final int SIZE = 32;
+
+        ExpressionsCache() {
+            super(SIZE, 0.75f, true);
+        }
+
+        @Override protected boolean removeEldestEntry(
+                Map.Entry<String, T> eldest) {
+            return size() > SIZE;
+        }
+    }
+
+    /**
+     * Numeric operand of a comparison, for columns using the natural order of
+     * their values: the operand is unboxed once, and the values with its same
+     * type are compared as primitives -read directly as such from {@link
+     * INumericTableModel} instances-.
+     */
+    static abstract class NumericOperand {
+
+        /** Comparison result for null values. */
+        static final int NULL = Integer.MIN_VALUE;
+
+        private Object right;
+        private Comparator comparator;
+        private ModelAccess access;
+
+        NumericOperand(Object right, Comparator comparator) {
+            this.right = right;
+            this.comparator = comparator;
+        }
+
+        /**
+         * Returns the operand for the given value, or null if it is not a
+         * number, or the comparator does not follow the natural order.
+         */
+        static NumericOperand create(Object right, Comparator comparator) {
+            if (comparator == NATURAL_COMPARATOR) {
+                Class c = right.getClass();
+                if ((c == Integer.class) || (c == Long.class)) {
+                    return new Integral(right, comparator);
                 }
-                if (!okStart) {
-                    instantApplied = 1;
-                    sb.insert(0, ".*");
+
+                if ((c == Double.class) || (c == Float.class)) {
+                    return new Decimal(right, comparator);
                 }
-                if (!okEnd) {
-                    instantApplied+=2;
-                    sb.append(".*");
+            }
+
+            return null;
+        }
+
+        /**
+         * Compares the value of the entry with the operand, returning
+         * {@link #NULL} if the value is null.
+         */
+        int compare(RowFilter.Entry entry, int column) {
+            Object model = entry.getModel();
+            ModelAccess access = this.access;
+            if ((access == null) || (access.model != model)) {
+                this.access = access = new ModelAccess(model, column);
+            }
+
+            if (access.numeric != null) {
+                Object id = entry.getIdentifier();
+                if (id instanceof Integer) {
+                    return compare(access.numeric, (Integer) id, column);
                 }
             }
 
-            return sb.toString();
+            Object left = entry.getValue(column);
+            if (left == null) {
+                return NULL;
+            }
+
+            if (left.getClass() == right.getClass()) {
+                return compare(left);
+            }
+
+            if (left instanceof String) {
+                left = htmlHandler.stripHtml((String) left);
+            }
+
+            int ret = comparator.compare(left, right);
+
+            return (ret == NULL) ? -1 : ret;
         }
 
+        /** Compares a value with the same type as the operand. */
+        abstract int compare(Object left);
+
+        /** Compares the primitive value provided by the model. */
+        abstract int compare(INumericTableModel model, int row, int column);
+
+        /**
+         * Primitive access to the last model seen, kept as an immutable
+         * instance, as filters can be evaluated in several threads.
+         */
+        static class ModelAccess {
+            final Object model;
+            final INumericTableModel numeric;
+
+            ModelAccess(Object model, int column) {
+                this.model = model;
+                this.numeric = ((model instanceof INumericTableModel)
+                            && ((INumericTableModel) model).isNumericColumn(
+                                column)) ? (INumericTableModel) model : null;
+            }
+        }
+
+        /** Operand of type Integer or Long. */
+        static class Integral extends NumericOperand {
+            private long value;
+
+            Integral(Object right, Comparator comparator) {
+                super(right, comparator);
+                this.value = ((Number) right).longValue();
+            }
+
+            @Override int compare(Object left) {
+                return compare((left instanceof Integer)
+                        ? ((Integer) left).intValue()
+                        : ((Long) left).longValue());
+            }
+
+            @Override int compare(INumericTableModel model,
+                                  int                row,
+                                  int                column) {
+                return compare(model.getLong(row, column));
+            }
+
+            private int compare(long left) {
+                return (left < value) ? -1 : ((left == value) ? 0 : 1);
+            }
+        }
+
+        /** Operand of type Float or Double. */
+        static class Decimal extends NumericOperand {
+            private double value;
+
+            Decimal(Object right, Comparator comparator) {
+                super(right, comparator);
+                this.value = ((Number) right).doubleValue();
+            }
+
+            @Override int compare(Object left) {
+                return Double.compare((left instanceof Double)
+                        ? ((Double) left).doubleValue()
+                        : ((Float) left).doubleValue(), value);
+            }
+
+            @Override int compare(INumericTableModel model,
+                                  int                row,
+                                  int                column) {
+                return Double.compare(model.getDouble(row, column), value);
+            }
+        }
+    }
+
+    /**
+     * Matcher for wildcard expressions whose only wildcard is '*', and with no
+     * escaped characters, evaluated without regular expressions.
+     */
+    static abstract class LiteralMatcher {
+
+        /** Returns true if the string matches the expression. */
+        abstract boolean matches(String s);
+
+        /**
+         * Returns the matcher for the given wildcard expression, or null if
+         * it requires a regular expression.
+         */
+        static LiteralMatcher create(String expression) {
+            if ((expression.indexOf('?') != -1)
+                    || (expression.indexOf('\\') != -1)) {
+                return null;
+            }
+
+            int first = expression.indexOf('*');
+            if (first == -1) {
+                return new Exact(expression);
+            }
+
+            int last = expression.lastIndexOf('*');
+            String prefix = expression.substring(0, first);
+            String suffix = expression.substring(last + 1);
+            List<String> inner = new ArrayList<String>();
+            if (first < last) {
+                for (String each : expression.substring(first + 1, last)
+                        .split("\\*")) {
+                    if (each.length() > 0) {
+                        inner.add(each);
+                    }
+                }
+            }
+
+            if (inner.isEmpty()) {
+                return new Affixes(prefix, suffix);
+            }
+
+            if ((inner.size() == 1) && (prefix.length() == 0)
+                    && (suffix.length() == 0)) {
+                return new Contains(inner.get(0));
+            }
+
+            return new Glob(prefix, inner.toArray(new String[inner.size()]),
+                    suffix);
+        }
+
+        /** Expression without wildcards. */
+        static class Exact extends LiteralMatcher {
+            private String text;
+
+            Exact(String text) {
+                this.text = text;
+            }
+
+            @Override boolean matches(String s) {
+                return text.equals(s);
+            }
+        }
+
+        /** Expression 'prefix*', '*suffix' or 'prefix*suffix'. */
+        static class Affixes extends LiteralMatcher {
+            private String prefix;
+            private String suffix;
+            private int length;
+
+            Affixes(String prefix, String suffix) {
+                this.prefix = prefix;
+                this.suffix = suffix;
+                this.length = prefix.length() + suffix.length();
+            }
+
+            @Override boolean matches(String s) {
+                return (s.length() >= length) && s.startsWith(prefix)
+                        && s.endsWith(suffix);
+            }
+        }
+
+        /** Expression '*text*'. */
+        static class Contains extends LiteralMatcher {
+            private String text;
+
+            Contains(String text) {
+                this.text = text;
+            }
+
+            @Override boolean matches(String s) {
+                return s.indexOf(text) != -1;
+            }
+        }
+
+        /** Expression 'prefix*segment*...*segment*suffix'. */
+        static class Glob extends LiteralMatcher {
+            private String prefix;
+            private String segments[];
+            private String suffix;
+            private int length;
+
+            Glob(String prefix, String segments[], String suffix) {
+                this.prefix = prefix;
+                this.segments = segments;
+                this.suffix = suffix;
+                this.length = prefix.length() + suffix.length();
+                for (String segment : segments) {
+                    length += segment.length();
+                }
+            }
+
+            @Override boolean matches(String s) {
+                if ((s.length() < length) || !s.startsWith(prefix)
+                        || !s.endsWith(suffix)) {
+                    return false;
+                }
+
+                // the leftmost occurrence of each segment is always valid
+                int pos = prefix.length();
+                int end = s.length() - suffix.length();
+                for (String segment : segments) {
+                    int at = s.indexOf(segment, pos);
+                    if (at == -1) {
+                        return false;
+                    }
+
+                    pos = at + segment.length();
+                    if (pos > end) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }
     }
 
     static {
@@ -555,23 +1331,258 @@ public class Parser implements IParser {
         instantOperand.setInstantMode(true);
     }
 
-    /** Helper class to deal with null formats. It also trims the output. */
+    /**
+     * Returns the string in lower case, as compared by {@link
+     * String#compareToIgnoreCase(String)}.
+     */
+    static String foldCase(String s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            char folded = Character.toLowerCase(Character.toUpperCase(c));
+            if (c != folded) {
+                char chars[] = s.toCharArray();
+                chars[i] = folded;
+                while (++i < len) {
+                    chars[i] = Character.toLowerCase(Character.toUpperCase(
+                                chars[i]));
+                }
+
+                return new String(chars);
+            }
+        }
+
+        return s;
+    }
+
+    /** Returns the string without diacritical marks. */
+    static String stripAccents(String s) {
+        int len = s.length();
+        int i = 0;
+        while ((i < len) && (s.charAt(i) < 0x80)) {
+            i++;
+        }
+
+        if (i == len) {
+            return s;
+        }
+
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        len = decomposed.length();
+        for (i = 0; i < len; i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Helper class to deal with null formats. It also trims the output.<br>
+     * The string obtained for each row is cached with the formatted value,
+     * and reused while the row keeps the same value; the same applies to its
+     * folded form, if ignoring case or accents. Only the first
+     * MAX_CACHED_ROWS rows are cached.<br>
+     * The cache can be read by several threads without locking, as its
+     * {@link Formatted} entries are immutable; any modification is done
+     * holding the lock of this instance.
+     */
     static class FormatWrapper {
+        /** Rows beyond this limit have no cached strings. */
+        private static final int MAX_CACHED_ROWS = 1 << 20;
+
         Format format;
+        boolean foldCase;
+        boolean foldAccents;
+
+        /** The formatted value and string of each row, if cached. */
+        private volatile Formatted cache[] = new Formatted[0];
 
-        FormatWrapper(Format format) {
+        FormatWrapper(Format format, boolean foldCase) {
             this.format = format;
+            this.foldCase = foldCase;
+        }
+
+        /** Sets the folding, discarding any cached strings. */
+        public void setFolding(boolean foldCase, boolean foldAccents) {
+            this.foldCase = foldCase;
+            this.foldAccents = foldAccents;
+            clear();
+        }
+
+        /** Discards all the cached strings. */
+        public synchronized void clear() {
+            cache = new Formatted[0];
+        }
+
+        /** Returns the folded form of the given string. */
+        public String fold(String s) {
+            if (foldAccents) {
+                s = stripAccents(s);
+            }
+
+            return foldCase ? foldCase(s) : s;
+        }
+
+        /** Returns the folded string of the value, using the cache. */
+        public String fold(Object o, RowFilter.Entry entry) {
+            Formatted cached = getCached(o, entry);
+            if (cached == null) {
+                String text = format(o);
+                cached = new Formatted(o, text, fold(text));
+                setCached(entry, cached);
+            } else if (cached.folded == null) {
+                cached = new Formatted(cached.value, cached.text,
+                        fold(cached.text));
+                setCached(entry, cached);
+            }
+
+            return cached.folded;
+        }
+
+        /** Formats the value of the given entry, using the cache. */
+        public String format(Object o, RowFilter.Entry entry) {
+            Formatted cached = getCached(o, entry);
+            if (cached != null) {
+                return cached.text;
+            }
+
+            String ret = format(o);
+            // plain strings are not cached, as they are not transformed
+            if ((format != null) || (ret != o)) {
+                setCached(entry, new Formatted(o, ret, null));
+            }
+
+            return ret;
+        }
+
+        /** Returns the cached information for the entry, if valid. */
+        private Formatted getCached(Object o, RowFilter.Entry entry) {
+            Object id = entry.getIdentifier();
+            if ((o != null) && (id instanceof Integer)) {
+                int row = (Integer) id;
+                Formatted rows[] = cache;
+                if (row < rows.length) {
+                    Formatted ret = rows[row];
+                    if ((ret != null) && ((ret.value == o)
+                                || (isValueType(o) && o.equals(ret.value)))) {
+                        return ret;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /** Caches the information for the entry. */
+        private void setCached(RowFilter.Entry entry, Formatted formatted) {
+            Object id = entry.getIdentifier();
+            if ((formatted.value != null) && (id instanceof Integer)) {
+                int row = (Integer) id;
+                if (row >= MAX_CACHED_ROWS) {
+                    return;
+                }
+
+                // the growth and the writes cannot be lost to other threads
+                synchronized (this) {
+                    Formatted rows[] = cache;
+                    if (row >= rows.length) {
+                        rows = Arrays.copyOf(rows, Math.min(MAX_CACHED_ROWS,
+                                    Math.max(row + 1,
+                                        rows.length + (rows.length >> 1))));
+                        cache = rows;
+                    }
+
+                    rows[row] = formatted;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the value is of an immutable class that the table
+         * models commonly create on each access -like the boxed primitives-,
+         * so that it is compared by equality, not by identity.
+         */
+        private static boolean isValueType(Object o) {
+            Class<?> c = o.getClass();
+
+            return (c == String.class) || (c == Integer.class)
+                    || (c == Long.class) || (c == Double.class)
+                    || (c == Float.class) || (c == Short.class)
+                    || (c == Byte.class) || (c == Character.class)
+                    || (c == Boolean.class);
+        }
+
+        /** Discards the cached strings of the updated rows. */
+        public synchronized void tableUpdated(int eventType, int firstRow, int lastRow) {
+            Formatted rows[] = cache;
+            int size = rows.length;
+            if (firstRow >= size) {
+                return;
+            }
+
+            if (eventType == TableModelEvent.INSERT) {
+                int count = lastRow - firstRow + 1;
+                Formatted update[] = new Formatted[size + count];
+                System.arraycopy(rows, 0, update, 0, firstRow);
+                System.arraycopy(rows, firstRow, update, lastRow + 1,
+                    size - firstRow);
+                cache = (update.length > MAX_CACHED_ROWS)
+                    ? Arrays.copyOf(update, MAX_CACHED_ROWS) : update;
+            } else if ((firstRow == 0) && (lastRow >= size - 1)) {
+                cache = new Formatted[0];
+            } else if (eventType == TableModelEvent.DELETE) {
+                lastRow = Math.min(lastRow, size - 1);
+                Formatted update[] = new Formatted[size - lastRow + firstRow
+                        - 1];
+                System.arraycopy(rows, 0, update, 0, firstRow);
+                System.arraycopy(rows, lastRow + 1, update, firstRow,
+                    size - lastRow - 1);
+                cache = update;
+            } else {
+                Arrays.fill(rows, firstRow, Math.min(lastRow + 1, size), null);
+            }
         }
 
         public String format(Object o) {
             if (format==null){
                 return (o == null) ? "" : htmlHandler.stripHtml(o.toString());
             }
-            return o==null? "" : format.format(o).trim();
+            if (o == null) {
+                return "";
+            }
+            // Format instances are not thread safe, and can be shared
+            synchronized (format) {
+                return format.format(o).trim();
+            }
         }
 
         public Object parseObject(String content) throws ParseException {
-            return (format == null) ? null : format.parseObject(content);
+            if (format == null) {
+                return null;
+            }
+            synchronized (format) {
+                return format.parseObject(content);
+            }
+        }
+    }
+
+    /**
+     * A value, with its formatted string -and its folded form, if known.<br>
+     * Instances are immutable, so they can be shared by several threads.
+     */
+    static final class Formatted {
+        final Object value;
+        final String text;
+        final String folded;
+
+        Formatted(Object value, String text, String folded) {
+            this.value = value;
+            this.text = text;
+            this.folded = folded;
         }
     }
 
@@ -0,0 +1,232 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javax.swing.RowFilter;
+
+import net.coderazzi.filters.parser.Parser.FormatWrapper;
+
+
+/**
+ * {@link ColumnIndex} associating keys obtained from the rows to lists of
+ * rows -postings-.<br>
+ * The postings keep identifiers of the rows, instead of the rows themselves,
+ * so that inserting or deleting rows does not require updating them: an
+ * updated row is just indexed again with a new identifier.
+ */
+abstract class PostingsIndex extends ColumnIndex {
+
+    /** Discarded identifiers kept before building the index again. */
+    private static final int MAX_DISCARDED_IDS = 65536;
+
+    /** Format to obtain the strings of the rows, as matched by the filters. */
+    private FormatWrapper format;
+    private boolean fold;
+    private IndexEntry entry = new IndexEntry();
+
+    /** Identifier of each row. */
+    private int rowIds[];
+
+    /** Row of each identifier, or -1 if discarded. */
+    private int idRows[];
+    private int ids;
+
+    /**
+     * Constructor.
+     *
+     * @param  column  the model index of the column
+     * @param  format  the format to obtain the row strings, if required
+     * @param  fold    true to obtain the folded strings
+     */
+    PostingsIndex(int column, FormatWrapper format, boolean fold) {
+        super(column);
+        this.format = format;
+        this.fold = fold;
+    }
+
+    /** Adds to the postings of the keys of the row the given identifier. */
+    abstract void index(int row, int id);
+
+    /** Returns the rows with the given identifiers. */
+    BitSet getRows(int identifiers[], int count) {
+        BitSet ret = new BitSet(rowCount);
+        for (int i = 0; i < count; i++) {
+            int row = idRows[identifiers[i]];
+            if (row >= 0) {
+                ret.set(row);
+            }
+        }
+
+        return ret;
+    }
+
+    /** Returns the string of the given row, as matched by the filters. */
+    String getString(int row) {
+        entry.row = row;
+        Object value = model.getValueAt(row, column);
+
+        return fold ? format.fold(value, entry) : format.format(value, entry);
+    }
+
+    @Override void build() {
+        rowIds = new int[rowCount];
+        idRows = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            add(row);
+        }
+    }
+
+    @Override void clear() {
+        super.clear();
+        rowIds = idRows = null;
+        ids = 0;
+    }
+
+    @Override void insertRows(int firstRow, int count) {
+        for (int id = 0; id < ids; id++) {
+            if (idRows[id] >= firstRow) {
+                idRows[id] += count;
+            }
+        }
+
+        int old[] = rowIds;
+        rowIds = new int[rowCount];
+        System.arraycopy(old, 0, rowIds, 0, firstRow);
+        System.arraycopy(old, firstRow, rowIds, firstRow + count,
+            rowCount - firstRow - count);
+        for (int row = firstRow; row < firstRow + count; row++) {
+            add(row);
+        }
+
+        checkDiscarded();
+    }
+
+    @Override void deleteRows(int firstRow, int count) {
+        int lastRow = firstRow + count;
+        for (int row = firstRow; row < lastRow; row++) {
+            idRows[rowIds[row]] = -1;
+        }
+
+        for (int id = 0; id < ids; id++) {
+            if (idRows[id] >= lastRow) {
+                idRows[id] -= count;
+            }
+        }
+
+        System.arraycopy(rowIds, lastRow, rowIds, firstRow,
+            rowCount - firstRow);
+        checkDiscarded();
+    }
+
+    @Override void updateRows(int firstRow, int count) {
+        for (int row = firstRow; row < firstRow + count; row++) {
+            idRows[rowIds[row]] = -1;
+            add(row);
+        }
+
+        checkDiscarded();
+    }
+
+    /** Indexes the given row, with a new identifier. */
+    private void add(int row) {
+        int id = ids++;
+        if (id == idRows.length) {
+            idRows = Arrays.copyOf(idRows, id + (id >> 1) + 16);
+        }
+
+        idRows[id] = row;
+        rowIds[row] = id;
+        index(row, id);
+    }
+
+    /** Drops the index if it keeps too many discarded identifiers. */
+    private void checkDiscarded() {
+        if (ids - rowCount > Math.max(MAX_DISCARDED_IDS, rowCount)) {
+            clear();
+        }
+    }
+
+    /** Sorted identifiers of the rows with a given key. */
+    static class Postings {
+        int ids[] = new int[4];
+        int size;
+
+        void add(int id) {
+            // identifiers are added in increasing order
+            if ((size == 0) || (ids[size - 1] != id)) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size << 1);
+                }
+
+                ids[size++] = id;
+            }
+        }
+
+        /**
+         * Keeps in the given sorted identifiers those included here,
+         * returning how many are kept.
+         */
+        int retain(int candidates[], int count) {
+            int ret = 0;
+            int from = 0;
+            for (int i = 0; (i < count) && (from < size); i++) {
+                int pos = Arrays.binarySearch(ids, from, size, candidates[i]);
+                if (pos >= 0) {
+                    candidates[ret++] = candidates[i];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+
+            return ret;
+        }
+    }
+
+    /** Entry used to obtain the strings of the rows, as cached. */
+    class IndexEntry extends RowFilter.Entry {
+        int row;
+
+        @Override public Object getModel() {
+            return model;
+        }
+
+        @Override public int getValueCount() {
+            return model.getColumnCount();
+        }
+
+        @Override public Object getValue(int index) {
+            return model.getValueAt(row, index);
+        }
+
+        @Override public Object getIdentifier() {
+            return row;
+        }
+    }
+}
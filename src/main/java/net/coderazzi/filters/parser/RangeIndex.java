@@ -0,0 +1,344 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import javax.swing.RowFilter;
+import javax.swing.table.TableModel;
+
+
+/**
+ * {@link ColumnIndex} with the values of the column sorted with its {@link
+ * Comparator}, used to resolve comparison operators by binary search.
+ */
+class RangeIndex extends ColumnIndex {
+
+    private Comparator comparator;
+
+    /** Value on each row. */
+    private Object rowValues[];
+
+    /** The non null values, sorted, and then by row. */
+    private Object values[];
+    private int rows[];
+    private int size;
+
+    RangeIndex(int column, Comparator comparator) {
+        super(column);
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one, which
+     * includes the rows whose value is less, equal and/or greater than the
+     * operand, or null -nulls are otherwise excluded-.
+     */
+    RowFilter createFilter(RowFilter filter,
+                           Object    right,
+                           boolean   less,
+                           boolean   equal,
+                           boolean   greater,
+                           boolean   nulls) {
+        return new RangeFilter(filter, right, less, equal, greater, nulls);
+    }
+
+    /**
+     * Returns the rows whose value is less, equal and/or greater than the
+     * operand, plus the rows with null value, if so requested.<br>
+     * It returns null if the index cannot be built for the given model.
+     */
+    BitSet select(TableModel model,
+                  Object     right,
+                  boolean    less,
+                  boolean    equal,
+                  boolean    greater,
+                  boolean    nulls) {
+        if (!prepare(model)) {
+            return null;
+        }
+
+        int lower;
+        int upper;
+        try {
+            lower = search(right, false);
+            upper = search(right, true);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+
+        BitSet ret = new BitSet(rowCount);
+        if (less && greater && nulls) {
+            ret.set(0, rowCount);
+            if (!equal) {
+                while (lower < upper) {
+                    ret.clear(rows[lower++]);
+                }
+            }
+        } else {
+            if (less) {
+                set(ret, 0, lower);
+            }
+
+            if (equal) {
+                set(ret, lower, upper);
+            }
+
+            if (greater) {
+                set(ret, upper, size);
+            }
+
+            if (nulls) {
+                for (int row = 0; row < rowCount; row++) {
+                    if (rowValues[row] == null) {
+                        ret.set(row);
+                    }
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /** Sets the rows of the values in the given positions. */
+    private void set(BitSet bits, int from, int to) {
+        while (from < to) {
+            bits.set(rows[from++]);
+        }
+    }
+
+    @Override void build() {
+        rowValues = new Object[rowCount];
+        int sorted[] = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            Object value = getValue(row);
+            rowValues[row] = value;
+            if (value != null) {
+                sorted[size++] = row;
+            }
+        }
+
+        mergeSort(sorted, new int[size], 0, size);
+        rows = sorted;
+        values = new Object[rows.length];
+        for (int i = 0; i < size; i++) {
+            values[i] = rowValues[rows[i]];
+        }
+    }
+
+    @Override void clear() {
+        super.clear();
+        rowValues = values = null;
+        rows = null;
+        size = 0;
+    }
+
+    /** Sorts the rows by their values, keeping the order of equal values. */
+    private void mergeSort(int a[], int aux[], int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(a, aux, from, middle);
+        mergeSort(a, aux, middle, to);
+        if (comparator.compare(rowValues[a[middle - 1]], rowValues[a[middle]])
+                <= 0) {
+            return;
+        }
+
+        System.arraycopy(a, from, aux, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if ((j == to) || ((i < middle)
+                        && (comparator.compare(rowValues[aux[i]],
+                                rowValues[aux[j]]) <= 0))) {
+                a[k] = aux[i++];
+            } else {
+                a[k] = aux[j++];
+            }
+        }
+    }
+
+    /**
+     * Returns the first position whose value is greater or equal -or just
+     * greater, if so specified- than the given one.
+     */
+    private int search(Object value, boolean greater) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int c = comparator.compare(values[middle], value);
+            if ((c < 0) || (greater && (c == 0))) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /** Returns the position of the given value and row, or where it goes. */
+    private int find(Object value, int row) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int c = comparator.compare(values[middle], value);
+            if (c == 0) {
+                c = rows[middle] - row;
+            }
+
+            if (c < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /** Adds to the sorted values the value on the given row. */
+    private void add(int row) {
+        Object value = rowValues[row];
+        if (value != null) {
+            int pos = find(value, row);
+            if (size == values.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                values = Arrays.copyOf(values, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+            }
+
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+            values[pos] = value;
+            rows[pos] = row;
+            ++size;
+        }
+    }
+
+    /** Removes from the sorted values the value on the given row. */
+    private void remove(int row) {
+        Object value = rowValues[row];
+        if (value != null) {
+            int pos = find(value, row);
+            if ((pos == size) || (rows[pos] != row)) {
+                // the value has been modified in place
+                throw new IllegalStateException();
+            }
+
+            --size;
+            System.arraycopy(values, pos + 1, values, pos, size - pos);
+            System.arraycopy(rows, pos + 1, rows, pos, size - pos);
+            values[size] = null;
+        }
+    }
+
+    @Override void insertRows(int firstRow, int count) {
+        for (int i = 0; i < size; i++) {
+            if (rows[i] >= firstRow) {
+                rows[i] += count;
+            }
+        }
+
+        Object old[] = rowValues;
+        rowValues = new Object[rowCount];
+        System.arraycopy(old, 0, rowValues, 0, firstRow);
+        System.arraycopy(old, firstRow, rowValues, firstRow + count,
+            rowCount - firstRow - count);
+        for (int row = firstRow; row < firstRow + count; row++) {
+            rowValues[row] = getValue(row);
+            add(row);
+        }
+    }
+
+    @Override void deleteRows(int firstRow, int count) {
+        int lastRow = firstRow + count;
+        for (int row = firstRow; row < lastRow; row++) {
+            remove(row);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (rows[i] >= lastRow) {
+                rows[i] -= count;
+            }
+        }
+
+        System.arraycopy(rowValues, lastRow, rowValues, firstRow,
+            rowCount - firstRow);
+        Arrays.fill(rowValues, rowCount, rowCount + count, null);
+    }
+
+    @Override void updateRows(int firstRow, int count) {
+        for (int row = firstRow; row < firstRow + count; row++) {
+            remove(row);
+            rowValues[row] = getValue(row);
+            add(row);
+        }
+    }
+
+    /** Returns the value on the given row, as compared by the filters. */
+    private Object getValue(int row) {
+        Object ret = model.getValueAt(row, column);
+
+        return (ret instanceof String)
+            ? Parser.htmlHandler.stripHtml((String) ret) : ret;
+    }
+
+    /** Filter resolved with a selection of the sorted values. */
+    class RangeFilter extends IndexedFilter {
+        private Object right;
+        private boolean less;
+        private boolean equal;
+        private boolean greater;
+        private boolean nulls;
+
+        RangeFilter(RowFilter filter,
+                    Object    right,
+                    boolean   less,
+                    boolean   equal,
+                    boolean   greater,
+                    boolean   nulls) {
+            super(filter, false, false);
+            this.right = right;
+            this.less = less;
+            this.equal = equal;
+            this.greater = greater;
+            this.nulls = nulls;
+        }
+
+        @Override BitSet select(TableModel model) {
+            return RangeIndex.this.select(model, right, less, equal, greater,
+                    nulls);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.RowFilter;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.parser.Parser.FormatWrapper;
+
+
+/**
+ * {@link ColumnIndex} with the trigrams -substrings of three characters- of
+ * the strings of the column, as matched by the wildcard operators.<br>
+ * A wildcard expression is first resolved into the rows containing all the
+ * trigrams of its literal fragments, and only these candidates are then
+ * matched.
+ */
+class TextIndex extends PostingsIndex {
+
+    /** Rows with each trigram, as identifiers. */
+    private PostingsMap postings;
+
+    TextIndex(int column, FormatWrapper format, boolean fold) {
+        super(column, format, fold);
+    }
+
+    /**
+     * Returns a filter including the same rows as the given one, which
+     * matches -or not, if equals is false- the given wildcard expression; the
+     * expression can only include the wildcard '*'.
+     */
+    RowFilter createFilter(RowFilter filter,
+                           String    expression,
+                           boolean   equals) {
+        Set<Long> trigrams = new HashSet<Long>();
+        for (String fragment : expression.split("\\*")) {
+            for (int i = fragment.length() - 3; i >= 0; i--) {
+                trigrams.add(trigram(fragment, i));
+            }
+        }
+
+        if (trigrams.isEmpty()) {
+            return filter;
+        }
+
+        long keys[] = new long[trigrams.size()];
+        int i = 0;
+        for (Long each : trigrams) {
+            keys[i++] = each;
+        }
+
+        return new TextFilter(filter, keys, equals);
+    }
+
+    /**
+     * Returns the rows whose strings contain all the given trigrams, or null
+     * if the index cannot be built for the given model.
+     */
+    BitSet select(TableModel model, long trigrams[]) {
+        if (!prepare(model)) {
+            return null;
+        }
+
+        BitSet ret = new BitSet(rowCount);
+        Postings lists[] = new Postings[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            lists[i] = postings.get(trigrams[i]);
+            if (lists[i] == null) {
+                return ret;
+            }
+        }
+
+        Arrays.sort(lists, new Comparator<Postings>() {
+                @Override public int compare(Postings o1, Postings o2) {
+                    return o1.size - o2.size;
+                }
+            });
+
+        int candidates[] = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = candidates.length;
+        for (int i = 1; (i < lists.length) && (size > 0); i++) {
+            size = lists[i].retain(candidates, size);
+        }
+
+        return getRows(candidates, size);
+    }
+
+    @Override void build() {
+        postings = new PostingsMap();
+        super.build();
+    }
+
+    @Override void clear() {
+        super.clear();
+        postings = null;
+    }
+
+    @Override void index(int row, int id) {
+        String s = getString(row);
+        for (int i = s.length() - 3; i >= 0; i--) {
+            postings.add(trigram(s, i), id);
+        }
+    }
+
+    /** Returns the trigram starting at the given position. */
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16)
+                | s.charAt(i + 2);
+    }
+
+    /** Map of trigrams to their {@link Postings}, without boxing the keys. */
+    static class PostingsMap {
+        private long keys[] = new long[1024];
+        private Postings values[] = new Postings[1024];
+        private int size;
+
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null;
+                    i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+
+            return null;
+        }
+
+        void add(long key, int id) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i].add(id);
+
+                    return;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            Postings list = new Postings();
+            list.add(id);
+            keys[i] = key;
+            values[i] = list;
+            if (++size > (keys.length >> 1)) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            long oldKeys[] = keys;
+            Postings oldValues[] = values;
+            keys = new long[oldKeys.length << 1];
+            values = new Postings[oldKeys.length << 1];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /** Filter resolved with the candidates containing its trigrams. */
+    class TextFilter extends IndexedFilter {
+        private long trigrams[];
+
+        TextFilter(RowFilter filter, long trigrams[], boolean equals) {
+            super(filter, true, !equals);
+            this.trigrams = trigrams;
+        }
+
+        @Override BitSet select(TableModel model) {
+            return TextIndex.this.select(model, trigrams);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import net.coderazzi.filters.Filter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the choices maintained by the {@link AdaptiveChoicesHandler}:
+ * after random inserts, deletes, updates and filter changes on the model,
+ * the choices of each editor must be the values of the rows passing all the
+ * other filters, and the rows displayed those passing all of them.
+ */
+public class AdaptiveChoicesTest {
+
+    private static final int SEQUENCES = 4;
+    private static final int STEPS = 100;
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 1500;
+    private static final int MAX_VALUE = 8;
+
+    /** The expressions set on the editors, with the values they include. */
+    private static final Condition CONDITIONS[] = {
+            new Condition("") {
+                @Override boolean passes(Integer v) {
+                    return true;
+                }
+            },
+            new Condition("<4") {
+                @Override boolean passes(Integer v) {
+                    return (v != null) && (v < 4);
+                }
+            },
+            new Condition(">=5") {
+                @Override boolean passes(Integer v) {
+                    return (v != null) && (v >= 5);
+                }
+            },
+            new Condition("3") {
+                @Override boolean passes(Integer v) {
+                    return (v != null) && (v == 3);
+                }
+            },
+            new Condition("!2") {
+                @Override boolean passes(Integer v) {
+                    return (v == null) || (v != 2);
+                }
+            },
+            new Condition("=") {
+                @Override boolean passes(Integer v) {
+                    return v == null;
+                }
+            },
+            new Condition("!") {
+                @Override boolean passes(Integer v) {
+                    return v != null;
+                }
+            },
+        };
+
+    private Random random;
+    private DefaultTableModel model;
+    private JTable table;
+    private TableFilterHeader header;
+    private ModuloFilter filter;
+    private Condition conditions[] = new Condition[COLUMNS];
+
+    @Test public void testRandomSequences() throws Throwable {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            random = new Random(sequence);
+            random.nextInt();
+            runOnEdt(new Runnable() {
+                    @Override public void run() {
+                        runSequence();
+                    }
+                });
+        }
+    }
+
+    void runSequence() {
+        model = new DefaultTableModel(0, COLUMNS) {
+                private static final long serialVersionUID = 1L;
+
+                @Override public Class<?> getColumnClass(int column) {
+                    return Integer.class;
+                }
+            };
+        for (int i = 0; i < ROWS; i++) {
+            model.addRow(rowVector());
+        }
+
+        table = new JTable(model);
+        header = new TableFilterHeader(table, AutoChoices.ENABLED);
+        header.setAdaptiveChoices(true);
+        header.setBackgroundChoices(false);
+        header.setLazyChoices(false);
+        header.setFilterOnUpdates(true);
+        filter = new ModuloFilter();
+        header.addFilter(filter);
+        for (int c = 0; c < COLUMNS; c++) {
+            conditions[c] = CONDITIONS[0];
+        }
+
+        check("initial");
+        for (int step = 0; step < STEPS; step++) {
+            String change = applyRandomChange();
+            check("step " + step + ": " + change);
+        }
+
+        header.setTable(null);
+    }
+
+    /** Applies a random change, returning its description. */
+    private String applyRandomChange() {
+        int rows = model.getRowCount();
+        switch (random.nextInt(10)) {
+
+        case 0:
+        case 1:
+        case 2: {
+            int column = random.nextInt(COLUMNS);
+            conditions[column] = CONDITIONS[random.nextInt(CONDITIONS.length)];
+            header.getFilterEditor(column).setContent(
+                conditions[column].expression);
+
+            return "editor " + column + ": " + conditions[column].expression;
+        }
+
+        case 3: {
+            if (random.nextBoolean()) {
+                filter.setEnabled(!filter.isEnabled());
+
+                return "filter enabled " + filter.isEnabled();
+            }
+
+            filter.setModulo(2 + random.nextInt(3));
+
+            return "filter modulo " + filter.modulo;
+        }
+
+        case 4: {
+            int row = random.nextInt(rows + 1);
+            model.insertRow(row, rowVector());
+
+            return "insert " + row;
+        }
+
+        case 5: {
+            // a block of rows, notified at once
+            int row = random.nextInt(rows + 1);
+            int count = 1 + random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                model.getDataVector().add(row, rowVector());
+            }
+
+            model.fireTableRowsInserted(row, row + count - 1);
+
+            return "insert " + row + "+" + count;
+        }
+
+        case 6: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int count = 1 + random.nextInt(Math.min(rows - row, 200));
+            model.getDataVector().subList(row, row + count).clear();
+            model.fireTableRowsDeleted(row, row + count - 1);
+
+            return "delete " + row + "+" + count;
+        }
+
+        case 7: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int column = random.nextInt(COLUMNS);
+            model.setValueAt(createValue(), row, column);
+
+            return "update " + row + "," + column;
+        }
+
+        case 8: {
+            // several rows updated, notified at once
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int last = Math.min(rows - 1, row + random.nextInt(100));
+            for (int i = row; i <= last; i++) {
+                model.getDataVector().set(i, rowVector());
+            }
+
+            model.fireTableRowsUpdated(row, last);
+
+            return "update " + row + "-" + last;
+        }
+
+        default: {
+            for (int i = 0; i < rows; i += 1 + random.nextInt(10)) {
+                model.getDataVector().set(i, rowVector());
+            }
+
+            model.fireTableDataChanged();
+
+            return "data changed";
+        }
+        }
+    }
+
+    /**
+     * Checks the choices of each editor and the rows displayed against a
+     * full evaluation of the filters.
+     */
+    private void check(String context) {
+        BitSet expected = new BitSet();
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            if (passesExcept(row, -1)) {
+                expected.set(row);
+            }
+        }
+
+        BitSet displayed = new BitSet();
+        for (int view = table.getRowCount() - 1; view >= 0; view--) {
+            displayed.set(table.convertRowIndexToModel(view));
+        }
+
+        assertEquals(context, expected, displayed);
+
+        for (int c = 0; c < COLUMNS; c++) {
+            Set<Object> choices = new HashSet<Object>();
+            choices.add(CustomChoice.MATCH_ALL);
+            for (int row = model.getRowCount() - 1; row >= 0; row--) {
+                if (passesExcept(row, c)) {
+                    Object value = model.getValueAt(row, c);
+                    choices.add((value == null) ? CustomChoice.MATCH_EMPTY
+                                                : value.toString());
+                }
+            }
+
+            FilterEditor editor = (FilterEditor) header.getFilterEditor(c);
+            assertEquals(context + ", choices " + c, choices,
+                new HashSet<Object>(editor.getChoices()));
+        }
+    }
+
+    /** Returns true if the row passes all the filters but the editor's. */
+    private boolean passesExcept(int row, int column) {
+        if (filter.isEnabled() && !filter.passes(model.getValueAt(row, 1))) {
+            return false;
+        }
+
+        for (int c = 0; c < COLUMNS; c++) {
+            if ((c != column)
+                    && !conditions[c].passes(
+                        (Integer) model.getValueAt(row, c))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Vector<Object> rowVector() {
+        Vector<Object> ret = new Vector<Object>();
+        for (int c = 0; c < COLUMNS; c++) {
+            ret.add(createValue());
+        }
+
+        return ret;
+    }
+
+    private Integer createValue() {
+        return (random.nextInt(20) == 0) ? null : random.nextInt(MAX_VALUE);
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /** Expression for an editor, with the values it includes. */
+    abstract static class Condition {
+        final String expression;
+
+        Condition(String expression) {
+            this.expression = expression;
+        }
+
+        abstract boolean passes(Integer value);
+    }
+
+    /** Filter excluding the multiples of a number on the second column. */
+    static class ModuloFilter extends Filter {
+        int modulo = 3;
+
+        public void setModulo(int modulo) {
+            this.modulo = modulo;
+            reportFilterUpdatedToObservers();
+        }
+
+        public boolean passes(Object value) {
+            return (value == null) || (((Integer) value % modulo) != 0);
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            return passes(entry.getValue(1));
+        }
+    }
+}
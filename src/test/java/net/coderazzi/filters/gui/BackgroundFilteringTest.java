@@ -0,0 +1,179 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.Filter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the state of the editors while the filters are evaluated on a
+ * background thread: they report it as filtering, and the table keeps the
+ * previous rows until the evaluation completes.
+ */
+public class BackgroundFilteringTest {
+
+    private static final int ROWS = 1000;
+
+    private SnapshotModel model;
+    private JTable table;
+    private TableFilterHeader header;
+    private FilterEditor editor;
+    private BlockingFilter filter = new BlockingFilter();
+    private List<Object> events = new ArrayList<Object>();
+
+    @Test public void testFilteringState() throws Throwable {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    model = new SnapshotModel();
+                    for (int i = 0; i < ROWS; i++) {
+                        model.addRow(new Object[] { i });
+                    }
+
+                    table = new JTable(model);
+                    header = new TableFilterHeader(table, AutoChoices.DISABLED);
+                    header.setAdaptiveChoices(false);
+                    filter.setEnabled(false);
+                    header.addFilter(filter);
+                    header.setBackgroundFiltering(true);
+                    editor = (FilterEditor) header.getFilterEditor(0);
+                }
+            });
+        waitFiltering();
+
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    editor.addPropertyChangeListener(
+                        FilterEditor.FILTERING_PROPERTY,
+                        new PropertyChangeListener() {
+                            @Override public void propertyChange(
+                                    PropertyChangeEvent evt) {
+                                events.add(evt.getNewValue());
+                            }
+                        });
+                    filter.setEnabled(true);
+                    assertTrue(editor.isFiltering());
+                    assertEquals(ROWS, table.getRowCount());
+                }
+            });
+
+        filter.release.countDown();
+        waitFiltering();
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    assertEquals(ROWS / 2, table.getRowCount());
+                    assertEquals("[true, false]", events.toString());
+                    header.setTable(null);
+                }
+            });
+    }
+
+    /** Waits until the editor no longer reports the filters evaluation. */
+    private void waitFiltering() throws Throwable {
+        long end = System.currentTimeMillis() + 10000;
+        final boolean filtering[] = { true };
+        while (filtering[0]) {
+            assertTrue("timeout", System.currentTimeMillis() < end);
+            runOnEdt(new Runnable() {
+                    @Override public void run() {
+                        filtering[0] = editor.isFiltering();
+                    }
+                });
+        }
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /** Model whose snapshot is a copy of its content. */
+    static class SnapshotModel extends DefaultTableModel
+        implements ISnapshotTableModel {
+
+        private static final long serialVersionUID = 1L;
+
+        SnapshotModel() {
+            super(0, 1);
+        }
+
+        @Override public Class<?> getColumnClass(int column) {
+            return Integer.class;
+        }
+
+        @Override public TableModel getSnapshot() {
+            DefaultTableModel ret = new DefaultTableModel(0, 1);
+            for (Object row : getDataVector()) {
+                ret.addRow(new Vector<Object>((Vector<?>) row));
+            }
+
+            return ret;
+        }
+    }
+
+    /**
+     * Filter including the even values, whose evaluation out of the event
+     * dispatch thread waits until released.
+     */
+    static class BlockingFilter extends Filter {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            if (!SwingUtilities.isEventDispatchThread()) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return ((Integer) entry.getValue(0) % 2) == 0;
+        }
+    }
+}
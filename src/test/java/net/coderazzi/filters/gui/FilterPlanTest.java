@@ -0,0 +1,183 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import net.coderazzi.filters.AndFilter;
+import net.coderazzi.filters.ComposedFilter;
+import net.coderazzi.filters.ComposedFilter.FilterStatistics;
+import net.coderazzi.filters.Filter;
+import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.gui.editor.FilterEditor;
+import net.coderazzi.filters.internal.EvaluationOrder;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies that the {@link FilterPlan} gathers its statistics on the
+ * composed filters it compiles, and that a new compilation keeps the order
+ * learned by the previous plan.
+ */
+public class FilterPlanTest {
+
+    private FiltersHandler handler;
+    private Filter accept;
+    private Filter reject;
+    private Filter nestedAccept;
+    private AndFilter nested;
+
+    @Test public void testOrderSurvivesCompilation() throws Throwable {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    handler = createHandler();
+                    accept = new ConstantFilter(true);
+                    reject = new ConstantFilter(false);
+                    nestedAccept = new ConstantFilter(true);
+                    nested = new AndFilter(nestedAccept, reject);
+                    // the accepting filters are evaluated first, as added
+                    handler.addFilter(accept, nested);
+
+                    // the nested composition is merged: its filters gather
+                    // the statistics, halved after REORDER_PERIOD evaluations
+                    evaluate(EvaluationOrder.REORDER_PERIOD);
+                    assertEquals(EvaluationOrder.REORDER_PERIOD / 2,
+                        getStatistics(handler, accept).getEvaluations());
+                    assertEquals(0,
+                        getStatistics(handler, accept).getDecisions());
+                    assertEquals(EvaluationOrder.REORDER_PERIOD / 2,
+                        getStatistics(nested, nestedAccept).getEvaluations());
+                    assertEquals(EvaluationOrder.REORDER_PERIOD / 2,
+                        getStatistics(nested, reject).getDecisions());
+                    assertTrue(getStatistics(nested, reject).getRank()
+                        < getStatistics(handler, accept).getRank());
+
+                    // the rejecting filter is now evaluated first, and
+                    // decides the result: the others are not evaluated
+                    long evaluations = getStatistics(handler, accept)
+                            .getEvaluations();
+                    long nestedEvaluations = getStatistics(nested,
+                            nestedAccept).getEvaluations();
+                    evaluate(100);
+                    assertEquals(evaluations,
+                        getStatistics(handler, accept).getEvaluations());
+                    assertEquals(nestedEvaluations,
+                        getStatistics(nested, nestedAccept).getEvaluations());
+                    assertEquals(EvaluationOrder.REORDER_PERIOD / 2 + 100,
+                        getStatistics(nested, reject).getDecisions());
+                }
+            });
+    }
+
+    @Test public void testNoStatisticsOutsideEdt() {
+        handler = createHandler();
+        accept = new ConstantFilter(true);
+        reject = new ConstantFilter(false);
+        handler.addFilter(accept, reject);
+        evaluate(100);
+        assertEquals(0, getStatistics(handler, accept).getEvaluations());
+        assertEquals(0, getStatistics(handler, reject).getEvaluations());
+    }
+
+    static FiltersHandler createHandler() {
+        FiltersHandler ret = new FiltersHandler(AutoChoices.DISABLED,
+                new ParserModel());
+        ret.setTable(new JTable(new DefaultTableModel(1, 1)));
+
+        return ret;
+    }
+
+    /** Evaluates the given number of rows on a new plan. */
+    void evaluate(int rows) {
+        FilterPlan plan = FilterPlan.compile(handler,
+                new HashMap<IFilter, FilterEditor>());
+        FilterPlan.PlanEntry entry = plan.createEntry();
+        entry.setEntry(new EmptyEntry());
+        for (int i = 0; i < rows; i++) {
+            assertFalse(plan.include(entry));
+        }
+    }
+
+    static FilterStatistics getStatistics(ComposedFilter composed,
+                                          IFilter        filter) {
+        for (FilterStatistics stats : composed.getStatistics()) {
+            if (stats.getFilter() == filter) {
+                return stats;
+            }
+        }
+
+        throw new AssertionError(filter + " not found");
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    static class ConstantFilter extends Filter {
+        private boolean value;
+
+        ConstantFilter(boolean value) {
+            this.value = value;
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            return value;
+        }
+    }
+
+    static class EmptyEntry extends RowFilter.Entry {
+        @Override public Object getModel() {
+            return null;
+        }
+
+        @Override public int getValueCount() {
+            return 1;
+        }
+
+        @Override public Object getValue(int index) {
+            return null;
+        }
+
+        @Override public Object getIdentifier() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies that the {@link FilterRowSorter} produces the same mappings and
+ * events as a {@link TableRowSorter}, over random sequences of filter, sort
+ * key, comparator and table changes.
+ */
+public class FilterRowSorterTest {
+
+    private static final int SEQUENCES = 4000;
+    private static final int STEPS = 40;
+    private static final int MAX_ROWS = 60;
+
+    private static final Class COLUMN_CLASSES[] = {
+            Integer.class, String.class, Object.class
+        };
+
+    /** Comparator valid for any column, reversing the natural order. */
+    private static final Comparator REVERSE = new Comparator() {
+            @Override public int compare(Object o1, Object o2) {
+                return o2.toString().compareTo(o1.toString());
+            }
+        };
+
+    private Random random;
+    private DefaultTableModel model;
+    private ThresholdFilter filter;
+    private TableRowSorter<DefaultTableModel> reference;
+    private FilterRowSorter<DefaultTableModel> sorter;
+    private StringBuilder referenceEvents;
+    private StringBuilder sorterEvents;
+
+    @Test public void testRandomSequences() {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            random = new Random(sequence);
+            setUp();
+            for (int step = 0; step < STEPS; step++) {
+                String operation = applyRandomOperation();
+                check("sequence " + sequence + ", step " + step + ": "
+                        + operation);
+            }
+        }
+    }
+
+    @Test public void testSwitchIncrementalSorting() {
+        model = new DefaultTableModel(new Object[][] {
+                    { 2, "b", "x" }, { 1, "a", "y" }, { 3, "c", "z" }
+                }, new Object[] { "a", "b", "c" });
+
+        JTable table = new JTable(model);
+        TableFilterHeader header = new TableFilterHeader(table,
+                AutoChoices.DISABLED);
+        header.setIncrementalSorting(false);
+        assertEquals(TableRowSorter.class, table.getRowSorter().getClass());
+
+        List<RowSorter.SortKey> keys = new ArrayList<RowSorter.SortKey>();
+        keys.add(new RowSorter.SortKey(1, SortOrder.DESCENDING));
+        table.getRowSorter().setSortKeys(keys);
+
+        header.setIncrementalSorting(true);
+        assertEquals(FilterRowSorter.class, table.getRowSorter().getClass());
+        assertEquals(keys, table.getRowSorter().getSortKeys());
+        assertEquals(2, table.convertRowIndexToModel(0));
+
+        header.setIncrementalSorting(false);
+        assertEquals(TableRowSorter.class, table.getRowSorter().getClass());
+        assertEquals(keys, table.getRowSorter().getSortKeys());
+        header.setTable(null);
+    }
+
+    private void setUp() {
+        model = new DefaultTableModel(0, COLUMN_CLASSES.length) {
+                private static final long serialVersionUID = 1L;
+
+                @Override public Class<?> getColumnClass(int column) {
+                    return COLUMN_CLASSES[column];
+                }
+            };
+
+        int rows = random.nextInt(MAX_ROWS);
+        for (int i = 0; i < rows; i++) {
+            model.addRow(createRow());
+        }
+
+        filter = new ThresholdFilter();
+        reference = new TableRowSorter<DefaultTableModel>(model);
+        sorter = new FilterRowSorter<DefaultTableModel>(model);
+        referenceEvents = new StringBuilder();
+        sorterEvents = new StringBuilder();
+        reference.addRowSorterListener(new EventRecorder(referenceEvents));
+        sorter.addRowSorterListener(new EventRecorder(sorterEvents));
+    }
+
+    /** Applies a random change on both sorters, returning its description. */
+    private String applyRandomOperation() {
+        int rows = model.getRowCount();
+        switch (random.nextInt(9)) {
+
+        case 0: {
+            // the filter changes, only the rows whose verdict changes are
+            // reported to the FilterRowSorter, as done by the FiltersHandler
+            if (reference.getRowFilter() != filter) {
+                reference.setRowFilter(filter);
+                sorter.setRowFilter(filter);
+
+                return "set filter";
+            }
+
+            RowBitmap before = filter.getVerdicts(rows);
+            filter.threshold = random.nextInt(60) - 5;
+
+            RowBitmap changed = filter.getVerdicts(rows);
+            for (int row = 0; row < rows; row++) {
+                changed.set(row, changed.get(row) != before.get(row));
+            }
+
+            reference.setRowFilter(filter);
+            sorter.filterUpdated(changed);
+
+            return "filter threshold " + filter.threshold;
+        }
+
+        case 1:
+            reference.setRowFilter(null);
+            sorter.setRowFilter(null);
+
+            return "unset filter";
+
+        case 2: {
+            List<RowSorter.SortKey> keys = createSortKeys();
+            reference.setSortKeys(keys);
+            sorter.setSortKeys(keys);
+
+            return "sort keys " + keys.size();
+        }
+
+        case 3: {
+            int first = random.nextInt(rows + 1);
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                model.insertRow(first + i, createRow());
+            }
+
+            reference.rowsInserted(first, first + count - 1);
+            sorter.rowsInserted(first, first + count - 1);
+
+            return "insert " + first + "+" + count;
+        }
+
+        case 4: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int first = random.nextInt(rows);
+            int last = Math.min(rows - 1, first + random.nextInt(4));
+            for (int i = last; i >= first; i--) {
+                model.removeRow(i);
+            }
+
+            reference.rowsDeleted(first, last);
+            sorter.rowsDeleted(first, last);
+
+            return "delete " + first + "-" + last;
+        }
+
+        case 5: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int first = random.nextInt(rows);
+            int last = Math.min(rows - 1, first + random.nextInt(8));
+            for (int i = first; i <= last; i++) {
+                int column = random.nextInt(COLUMN_CLASSES.length);
+                model.setValueAt(createValue(column), i, column);
+            }
+
+            reference.rowsUpdated(first, last);
+            sorter.rowsUpdated(first, last);
+
+            return "update " + first + "-" + last;
+        }
+
+        case 6: {
+            int column = random.nextInt(COLUMN_CLASSES.length);
+            Comparator comparator = random.nextBoolean() ? REVERSE : null;
+            reference.setComparator(column, comparator);
+            sorter.setComparator(column, comparator);
+
+            return "comparator " + column;
+        }
+
+        case 7: {
+            boolean sortsOnUpdates = random.nextBoolean();
+            reference.setSortsOnUpdates(sortsOnUpdates);
+            sorter.setSortsOnUpdates(sortsOnUpdates);
+
+            return "sorts on updates " + sortsOnUpdates;
+        }
+
+        default: {
+            for (int i = 0; i < rows; i++) {
+                model.setValueAt(createValue(0), i, 0);
+            }
+
+            reference.allRowsChanged();
+            sorter.allRowsChanged();
+
+            return "all rows changed";
+        }
+        }
+    }
+
+    /** Checks that both sorters have the same mappings and events. */
+    private void check(String message) {
+        assertEquals(message, referenceEvents.toString(),
+            sorterEvents.toString());
+
+        int viewRows = reference.getViewRowCount();
+        assertEquals(message, viewRows, sorter.getViewRowCount());
+        for (int i = 0; i < viewRows; i++) {
+            assertEquals(message, reference.convertRowIndexToModel(i),
+                sorter.convertRowIndexToModel(i));
+        }
+
+        for (int i = model.getRowCount() - 1; i >= 0; i--) {
+            assertEquals(message, reference.convertRowIndexToView(i),
+                sorter.convertRowIndexToView(i));
+        }
+    }
+
+    private Object[] createRow() {
+        Object ret[] = new Object[COLUMN_CLASSES.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = createValue(i);
+        }
+
+        return ret;
+    }
+
+    /** Creates a value for the column, with frequent duplicates and nulls. */
+    private Object createValue(int column) {
+        if (random.nextInt(10) == 0) {
+            return null;
+        }
+
+        switch (column) {
+
+        case 0:
+            return random.nextInt(50);
+
+        case 1:
+            return String.valueOf((char) ('a' + random.nextInt(6)))
+                + random.nextInt(3);
+
+        default:
+            return random.nextBoolean() ? (Object) random.nextInt(20)
+                                        : (Object) ("x" + random.nextInt(20));
+        }
+    }
+
+    private List<RowSorter.SortKey> createSortKeys() {
+        SortOrder orders[] = SortOrder.values();
+        List<RowSorter.SortKey> ret = new ArrayList<RowSorter.SortKey>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            ret.add(new RowSorter.SortKey(
+                    random.nextInt(COLUMN_CLASSES.length),
+                    orders[random.nextInt(orders.length)]));
+        }
+
+        return ret;
+    }
+
+    /** Filter on the first column, whose threshold can be changed. */
+    class ThresholdFilter extends RowFilter<DefaultTableModel, Integer> {
+        int threshold = 25;
+
+        @Override public boolean include(
+                Entry<? extends DefaultTableModel, ? extends Integer> entry) {
+            return include(entry.getValue(0));
+        }
+
+        /** Returns the verdict on each model row. */
+        RowBitmap getVerdicts(int rows) {
+            RowBitmap ret = new RowBitmap(rows, false);
+            for (int row = 0; row < rows; row++) {
+                ret.set(row, include(model.getValueAt(row, 0)));
+            }
+
+            return ret;
+        }
+
+        private boolean include(Object value) {
+            return (value == null) || (((Integer) value) < threshold);
+        }
+    }
+
+    /** Records the type of each event on the sorter. */
+    static class EventRecorder implements RowSorterListener {
+        private StringBuilder events;
+
+        EventRecorder(StringBuilder events) {
+            this.events = events;
+        }
+
+        @Override public void sorterChanged(RowSorterEvent e) {
+            events.append(e.getType()).append(' ');
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.Random;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.text.JTextComponent;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the instant filtering keystrokes on adaptive mode: a keystroke
+ * narrowing the previous instant expression only evaluates the rows passing
+ * it, a backspace restores the rows of the expression without evaluating
+ * any, and the rows displayed are always those containing the typed text.
+ */
+public class InstantNarrowingTest {
+
+    private static final int SEQUENCES = 4;
+    private static final int ROWS = 2000;
+    private static final String CHARACTERS = "abc";
+
+    private Random random;
+    private ReadsModel model;
+    private JTable table;
+    private TableFilterHeader header;
+    private JTextComponent text;
+
+    @Test public void testRandomSequences() throws Throwable {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            random = new Random(sequence);
+            runOnEdt(new Runnable() {
+                    @Override public void run() {
+                        runSequence();
+                    }
+                });
+        }
+    }
+
+    void runSequence() {
+        model = new ReadsModel();
+        for (int i = 0; i < ROWS; i++) {
+            model.addRow(new Object[] { createValue(), createValue() });
+        }
+
+        table = new JTable(model);
+        header = new TableFilterHeader(table, AutoChoices.DISABLED);
+        header.setAdaptiveChoices(true);
+        header.setInstantFiltering(true);
+        header.setAllowedInstantVanishing(true);
+        text = findText((Container) header.getFilterEditor(0));
+
+        // the values are longer than the typed text: the exact expressions
+        // include no rows, and the instant ones are applied
+        String typed = "";
+        for (int i = 0; i < 3; i++) {
+            String previous = typed;
+            typed += CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+            type(typed);
+            check(typed);
+            if (i > 0) {
+                BitSet passing = matching(previous);
+                BitSet outside = (BitSet) model.reads.clone();
+                outside.andNot(passing);
+                assertTrue(typed + ": rows evaluated "
+                    + model.reads.cardinality(),
+                    outside.isEmpty() && !model.reads.isEmpty());
+            }
+        }
+
+        while (typed.length() > 1) {
+            typed = typed.substring(0, typed.length() - 1);
+            type(typed);
+            check(typed);
+            assertTrue(typed + ": rows evaluated " + model.reads.cardinality(),
+                model.reads.isEmpty());
+        }
+
+        header.setTable(null);
+    }
+
+    /** Sets the text as typed, recording the rows read from the model. */
+    private void type(String s) {
+        model.reads.clear();
+        model.recording = true;
+        try {
+            text.setText(s);
+        } finally {
+            model.recording = false;
+        }
+    }
+
+    /** Checks the rows displayed against those containing the text. */
+    private void check(String s) {
+        BitSet expected = matching(s);
+        BitSet displayed = new BitSet();
+        for (int view = table.getRowCount() - 1; view >= 0; view--) {
+            displayed.set(table.convertRowIndexToModel(view));
+        }
+
+        assertEquals(s, expected, displayed);
+    }
+
+    private BitSet matching(String s) {
+        BitSet ret = new BitSet();
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            if (((String) model.getDataVector().get(row).get(0)).contains(
+                        s)) {
+                ret.set(row);
+            }
+        }
+
+        return ret;
+    }
+
+    private String createValue() {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 4 + random.nextInt(4); i > 0; i--) {
+            ret.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+
+        return ret.toString();
+    }
+
+    private static JTextComponent findText(Container container) {
+        for (Component c : container.getComponents()) {
+            if (c instanceof JTextComponent) {
+                return (JTextComponent) c;
+            }
+
+            if (c instanceof Container) {
+                JTextComponent ret = findText((Container) c);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /** Model recording the rows whose first column is read. */
+    static class ReadsModel extends DefaultTableModel {
+        private static final long serialVersionUID = 1L;
+
+        BitSet reads = new BitSet();
+        boolean recording;
+
+        ReadsModel() {
+            super(0, 2);
+        }
+
+        @Override public Class<?> getColumnClass(int column) {
+            return String.class;
+        }
+
+        @Override public Object getValueAt(int row, int column) {
+            if (recording && (column == 0)) {
+                reads.set(row);
+            }
+
+            return super.getValueAt(row, column);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the {@link RowBitmap} against a plain List of Booleans, over random
+ * sequences of inserts, removals and updates that cross word boundaries.
+ */
+public class RowBitmapTest {
+
+    private static final int SEQUENCES = 500;
+    private static final int STEPS = 60;
+    private static final int MAX_ROWS = 300;
+
+    private Random random;
+    private RowBitmap bitmap;
+    private List<Boolean> expected;
+
+    @Test public void testRandomSequences() {
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            random = new Random(sequence);
+            bitmap = new RowBitmap();
+            expected = new ArrayList<Boolean>();
+            for (int step = 0; step < STEPS; step++) {
+                String action = applyRandomChange();
+                verify("sequence " + sequence + ", step " + step + ": "
+                        + action);
+            }
+        }
+    }
+
+    @Test public void testInitialValue() {
+        for (int size = 0; size < 200; size += 7) {
+            for (boolean value : new boolean[] { false, true }) {
+                bitmap = new RowBitmap(size, value);
+                expected = new ArrayList<Boolean>();
+                for (int i = 0; i < size; i++) {
+                    expected.add(value);
+                }
+
+                verify("size " + size + ", value " + value);
+            }
+        }
+    }
+
+    @Test public void testCopyIsIndependent() {
+        random = new Random(0);
+        bitmap = new RowBitmap(150, false);
+        expected = new ArrayList<Boolean>();
+        for (int i = 0; i < 150; i++) {
+            boolean value = random.nextBoolean();
+            bitmap.set(i, value);
+            expected.add(value);
+        }
+
+        RowBitmap copy = bitmap.copy();
+        bitmap.insert(3, 70, true);
+        bitmap.remove(100, 20);
+        bitmap = copy;
+        verify("copy");
+    }
+
+    private String applyRandomChange() {
+        int size = expected.size();
+        int action = random.nextInt(10);
+        if ((action < 3) || (size == 0)) {
+            int row = random.nextInt(size + 1);
+            int count = 1 + random.nextInt(random.nextBoolean() ? 5 : 130);
+            count = Math.min(count, MAX_ROWS + 1 - size);
+            boolean value = random.nextBoolean();
+            bitmap.insert(row, count, value);
+            for (int i = 0; i < count; i++) {
+                expected.add(row, value);
+            }
+
+            return "insert " + row + "+" + count + "=" + value;
+        }
+
+        if (action < 6) {
+            int row = random.nextInt(size);
+            int count = 1 + random.nextInt(Math.min(size - row,
+                            random.nextBoolean() ? 5 : 130));
+            bitmap.remove(row, count);
+            expected.subList(row, row + count).clear();
+
+            return "remove " + row + "+" + count;
+        }
+
+        if (action < 9) {
+            int changes = 1 + random.nextInt(20);
+            for (int i = 0; i < changes; i++) {
+                int row = random.nextInt(size);
+                boolean value = random.nextBoolean();
+                assertEquals("set " + row, expected.get(row) != value,
+                    bitmap.set(row, value));
+                expected.set(row, value);
+            }
+
+            return "set x" + changes;
+        }
+
+        boolean value = random.nextBoolean();
+        bitmap.setAll(value);
+        for (int i = 0; i < size; i++) {
+            expected.set(i, value);
+        }
+
+        return "setAll " + value;
+    }
+
+    private void verify(String context) {
+        int size = expected.size();
+        assertEquals(context, size, bitmap.size());
+        assertEquals(context, (size + 63) >>> 6, bitmap.getWordCount());
+
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            boolean value = expected.get(i);
+            assertEquals(context + ", row " + i, value, bitmap.get(i));
+            if (value) {
+                cardinality++;
+            }
+        }
+
+        assertEquals(context, cardinality, bitmap.cardinality());
+        assertEquals(context, cardinality == 0, bitmap.isEmpty());
+
+        // no bits can be set beyond the size, or later inserts would see them
+        if ((size & 63) != 0) {
+            long last = bitmap.getWord(bitmap.getWordCount() - 1);
+            assertEquals(context, 0L, last >>> (size & 63));
+        }
+
+        for (int i = 0; i <= size; i++) {
+            assertEquals(context + ", next set " + i, nextSet(i),
+                bitmap.nextSetBit(i));
+            assertEquals(context + ", next clear " + i, nextClear(i),
+                bitmap.nextClearBit(i));
+        }
+    }
+
+    private int nextSet(int row) {
+        for (int i = row; i < expected.size(); i++) {
+            if (expected.get(i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int nextClear(int row) {
+        for (int i = row; i < expected.size(); i++) {
+            if (!expected.get(i)) {
+                return i;
+            }
+        }
+
+        return expected.size();
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.Vector;
+
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import net.coderazzi.filters.Filter;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the verdicts cached by the {@link NonAdaptiveChoicesHandler}:
+ * after random inserts, deletes, updates and filter changes on the model,
+ * the rows displayed by the table must be those passing a full evaluation
+ * of the filter.<br>
+ * The table is large enough to evaluate the filter in parallel, whose
+ * verdicts are then installed at once.
+ */
+public class VerdictCacheTest {
+
+    private static final int SEQUENCES = 4;
+    private static final int STEPS = 120;
+    private static final int ROWS = 3 * 8192;
+    private static final int MAX_VALUE = 100;
+
+    private Random random;
+    private DefaultTableModel model;
+    private JTable table;
+    private TableFilterHeader header;
+    private ThresholdFilter filter;
+
+    @Test public void testRandomSequences() throws Throwable {
+        int threads = FilterSettings.parallelThreads;
+        FilterSettings.parallelThreads = 4;
+        try {
+            for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+                random = new Random(sequence);
+                runOnEdt(new Runnable() {
+                        @Override public void run() {
+                            runSequence();
+                        }
+                    });
+                assertTrue(filter.parallel);
+            }
+        } finally {
+            FilterSettings.parallelThreads = threads;
+        }
+    }
+
+    void runSequence() {
+        model = new DefaultTableModel(0, 1) {
+                private static final long serialVersionUID = 1L;
+
+                @Override public Class<?> getColumnClass(int column) {
+                    return Integer.class;
+                }
+            };
+        for (int i = 0; i < ROWS; i++) {
+            model.addRow(createRow());
+        }
+
+        table = new JTable(model);
+        header = new TableFilterHeader(table, AutoChoices.DISABLED);
+        header.setAdaptiveChoices(false);
+        header.setParallelFiltering(true);
+        header.setFilterOnUpdates(true);
+        filter = new ThresholdFilter();
+        header.addFilter(filter);
+        check("initial");
+        for (int step = 0; step < STEPS; step++) {
+            String change = applyRandomChange();
+            check("step " + step + ": " + change);
+        }
+
+        header.setTable(null);
+    }
+
+    /** Applies a random change, returning its description. */
+    private String applyRandomChange() {
+        int rows = model.getRowCount();
+        switch (random.nextInt(7)) {
+
+        case 0: {
+            filter.setThreshold(random.nextInt(MAX_VALUE + 10));
+
+            return "threshold " + filter.threshold;
+        }
+
+        case 1: {
+            int row = random.nextInt(rows + 1);
+            model.insertRow(row, createRow());
+
+            return "insert " + row;
+        }
+
+        case 2: {
+            // a block of rows, notified at once
+            int row = random.nextInt(rows + 1);
+            int count = 1 + random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                model.getDataVector().add(row, rowVector());
+            }
+
+            model.fireTableRowsInserted(row, row + count - 1);
+
+            return "insert " + row + "+" + count;
+        }
+
+        case 3: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int count = 1 + random.nextInt(Math.min(rows - row, 200));
+            model.getDataVector().subList(row, row + count).clear();
+            model.fireTableRowsDeleted(row, row + count - 1);
+
+            return "delete " + row + "+" + count;
+        }
+
+        case 4: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            model.setValueAt(createValue(), row, 0);
+
+            return "update " + row;
+        }
+
+        case 5: {
+            // several rows updated, notified at once
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int last = Math.min(rows - 1, row + random.nextInt(100));
+            for (int i = row; i <= last; i++) {
+                ((Vector) model.getDataVector().get(i)).set(0,
+                    createValue());
+            }
+
+            model.fireTableRowsUpdated(row, last);
+
+            return "update " + row + "-" + last;
+        }
+
+        default: {
+            for (int i = 0; i < rows; i += 1 + random.nextInt(10)) {
+                ((Vector) model.getDataVector().get(i)).set(0,
+                    createValue());
+            }
+
+            model.fireTableDataChanged();
+
+            return "data changed";
+        }
+        }
+    }
+
+    /** Checks the rows displayed against a full evaluation of the filter. */
+    private void check(String context) {
+        BitSet expected = new BitSet();
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            if (filter.passes(model.getValueAt(row, 0))) {
+                expected.set(row);
+            }
+        }
+
+        BitSet displayed = new BitSet();
+        for (int view = table.getRowCount() - 1; view >= 0; view--) {
+            displayed.set(table.convertRowIndexToModel(view));
+        }
+
+        assertEquals(context, expected.cardinality(), table.getRowCount());
+        assertEquals(context, expected, displayed);
+    }
+
+    private Object[] createRow() {
+        return new Object[] { createValue() };
+    }
+
+    private Vector<Object> rowVector() {
+        Vector<Object> ret = new Vector<Object>();
+        ret.add(createValue());
+
+        return ret;
+    }
+
+    private Object createValue() {
+        return (random.nextInt(20) == 0) ? null : random.nextInt(MAX_VALUE);
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /** Filter including the values below a threshold, safe to share. */
+    static class ThresholdFilter extends Filter {
+        volatile int threshold = MAX_VALUE / 2;
+        volatile boolean parallel;
+
+        public void setThreshold(int threshold) {
+            this.threshold = threshold;
+            reportFilterUpdatedToObservers();
+        }
+
+        public boolean passes(Object value) {
+            return (value != null) && ((Integer) value < threshold);
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            if (!parallel && !SwingUtilities.isEventDispatchThread()) {
+                parallel = true;
+            }
+
+            return passes(entry.getValue(0));
+        }
+    }
+}
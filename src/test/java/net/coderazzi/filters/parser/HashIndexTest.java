@@ -0,0 +1,149 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import java.text.ParseException;
+
+import javax.swing.RowFilter;
+
+import net.coderazzi.filters.gui.ParserModel;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the equality operators and {@link Parser#indexEquals(RowFilter,
+ * Object)} resolved with the {@link HashIndex} against the same filters
+ * evaluated row by row, on integer columns -where some edits set values of
+ * other classes- and on string columns, with and without ignoring case and
+ * accents.
+ */
+public class HashIndexTest extends IndexTestSupport {
+
+    /** Prefix of the expressions checked with indexEquals. */
+    private static final String INDEX_EQUALS = "#";
+
+    private static final String CHARACTERS = "aAb\u00e1";
+    private static final String OPERATORS[] = { "", "=", "!" };
+
+    private boolean strings;
+    private boolean ignoreCase;
+    private boolean ignoreAccents;
+
+    @Test public void testRandomSequences() throws Throwable {
+        runSequences(20, 40);
+    }
+
+    @Override void startSequence() {
+        strings = random.nextBoolean();
+        ignoreCase = strings && random.nextBoolean();
+        ignoreAccents = strings && random.nextBoolean();
+    }
+
+    @Override Parser createParser() {
+        Parser ret;
+        if (strings) {
+            ret = new Parser(null, null,
+                    ignoreCase ? Parser.IGNORE_CASE_STRING_COMPARATOR
+                               : Parser.STRING_COMPARATOR, ignoreCase, 0);
+            ret.setIgnoreAccents(ignoreAccents);
+        } else {
+            ret = new Parser(new ParserModel.IntegerTypeFormat(),
+                    Parser.NATURAL_COMPARATOR, Parser.STRING_COMPARATOR,
+                    false, 0);
+        }
+
+        return ret;
+    }
+
+    @Override void enableIndex(Parser parser) {
+        parser.setHashIndex(true);
+    }
+
+    @Override Object createValue() {
+        int n = random.nextInt(100);
+        if (n < 10) {
+            return null;
+        }
+
+        if (strings) {
+            return createString();
+        }
+
+        // while editing, a few values of other classes
+        if (editing && (n < 12)) {
+            return Long.valueOf(random.nextInt(30));
+        }
+
+        return Integer.valueOf(random.nextInt(30));
+    }
+
+    @Override String createExpression() {
+        String operand = strings ? createString()
+                                 : String.valueOf(random.nextInt(34) - 2);
+        if (random.nextInt(4) == 0) {
+            return INDEX_EQUALS + operand;
+        }
+
+        String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+        if ((operator.length() > 0) && (random.nextInt(5) == 0)) {
+            operand = "";
+        }
+
+        return operator + operand;
+    }
+
+    @Override RowFilter createFilter(Parser parser, String expression)
+            throws ParseException {
+        if (!expression.startsWith(INDEX_EQUALS)) {
+            return parser.parseText(expression);
+        }
+
+        String operand = expression.substring(INDEX_EQUALS.length());
+        final Object value = (operand.length() == 0)
+            ? null : (strings ? operand : Integer.valueOf(operand));
+
+        // as created by the editors for the choices selected in the popup
+        RowFilter ret = new RowFilter() {
+            @Override public boolean include(RowFilter.Entry entry) {
+                Object val = entry.getValue(0);
+
+                return (val == null) ? (value == null) : val.equals(value);
+            }
+        };
+
+        return parser.indexEquals(ret, value);
+    }
+
+    private String createString() {
+        StringBuilder ret = new StringBuilder();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            ret.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+
+        return ret.toString();
+    }
+}
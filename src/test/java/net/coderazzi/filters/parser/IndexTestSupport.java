@@ -0,0 +1,301 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.text.ParseException;
+import java.util.Random;
+import java.util.Vector;
+
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableModel;
+
+
+/**
+ * Support to verify the filters resolved with a {@link ColumnIndex}: two
+ * parsers, one using the index, filter a single column model edited at
+ * random, and must include the same rows.<br>
+ * The sequences run on the event dispatch thread, the only one using the
+ * indexes; the models hold more rows than those checked one by one before
+ * the index is used.
+ */
+abstract class IndexTestSupport {
+
+    /** Rows checked one by one before an index is used, see ColumnIndex. */
+    static final int SCAN_ROWS = 1024;
+
+    Random random;
+    DefaultTableModel model;
+    Parser plain;
+    Parser indexed;
+
+    /** True once the model is filled, while it is edited. */
+    boolean editing;
+
+    /** Rows whose filter result was resolved without reading their value. */
+    private long resolvedRows;
+
+    /** Prepares a new sequence, once the random generator is set. */
+    void startSequence() {
+    }
+
+    /** Creates a parser, without indexes. */
+    abstract Parser createParser();
+
+    /** Enables the index under test on the given parser. */
+    abstract void enableIndex(Parser parser);
+
+    /** Returns a random value for the column. */
+    abstract Object createValue();
+
+    /** Returns a random expression to filter the column. */
+    abstract String createExpression();
+
+    /** Returns the filter for the given expression, using the given parser. */
+    RowFilter createFilter(Parser parser, String expression)
+            throws ParseException {
+        return parser.parseText(expression);
+    }
+
+    /**
+     * Runs the given number of random sequences of model edits, comparing
+     * after each edit the filters for several expressions.
+     */
+    void runSequences(final int sequences, final int steps) throws Throwable {
+        runOnEdt(new Runnable() {
+                @Override public void run() {
+                    for (int sequence = 0; sequence < sequences; sequence++) {
+                        random = new Random(sequence);
+                        // the first value hardly varies with small seeds
+                        random.nextInt();
+                        runSequence("sequence " + sequence, steps);
+                    }
+                }
+            });
+        assertTrue("index never used", resolvedRows > 0);
+    }
+
+    private void runSequence(String context, int steps) {
+        editing = false;
+        startSequence();
+        model = new DefaultTableModel(0, 1);
+        int rows = SCAN_ROWS / 2 + random.nextInt(SCAN_ROWS * 2);
+        for (int i = 0; i < rows; i++) {
+            model.addRow(new Object[] { createValue() });
+        }
+
+        plain = createParser();
+        indexed = createParser();
+        enableIndex(indexed);
+        model.addTableModelListener(new TableModelListener() {
+                @Override public void tableChanged(TableModelEvent e) {
+                    plain.tableUpdated(e.getType(), e.getFirstRow(),
+                        e.getLastRow());
+                    indexed.tableUpdated(e.getType(), e.getFirstRow(),
+                        e.getLastRow());
+                }
+            });
+        check(context + ", initial");
+        editing = true;
+        for (int step = 0; step < steps; step++) {
+            String edit = applyRandomEdit();
+            check(context + ", step " + step + ": " + edit);
+        }
+    }
+
+    /** Compares the filters of both parsers on a few random expressions. */
+    private void check(String context) {
+        for (int i = 0; i < 4; i++) {
+            String expression = createExpression();
+            try {
+                String expected = evaluate(createFilter(plain, expression),
+                        false);
+                RowFilter filter = createFilter(indexed, expression);
+                assertEquals(context + ", " + expression, expected,
+                    evaluate(filter, true));
+                // and again, once the selection is resolved
+                assertEquals(context + ", " + expression + " (again)",
+                    expected, evaluate(filter, true));
+            } catch (ParseException pe) {
+                throw new AssertionError(context + ", " + expression);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the filter on each row: '+' if included, '-'
+     * if not, 'E' if the evaluation fails.
+     */
+    private String evaluate(RowFilter filter, boolean count) {
+        Row row = new Row();
+        StringBuilder ret = new StringBuilder();
+        for (row.row = 0; row.row < model.getRowCount(); row.row++) {
+            row.read = false;
+            try {
+                ret.append(filter.include(row) ? '+' : '-');
+            } catch (RuntimeException ex) {
+                ret.append('E');
+            }
+
+            if (count && !row.read) {
+                resolvedRows++;
+            }
+        }
+
+        return ret.toString();
+    }
+
+    /** Applies a random edit on the model, returning its description. */
+    private String applyRandomEdit() {
+        int rows = model.getRowCount();
+        switch (random.nextInt(9)) {
+
+        case 0: {
+            int row = random.nextInt(rows + 1);
+            model.insertRow(row, new Object[] { createValue() });
+
+            return "insert " + row;
+        }
+
+        case 1: {
+            // blocks larger than 256 rows drop the index
+            int row = random.nextInt(rows + 1);
+            int count = 1 + random.nextInt(random.nextBoolean() ? 20 : 400);
+            for (int i = 0; i < count; i++) {
+                Vector<Object> data = new Vector<Object>();
+                data.add(createValue());
+                model.getDataVector().add(row, data);
+            }
+
+            model.fireTableRowsInserted(row, row + count - 1);
+
+            return "insert " + row + "+" + count;
+        }
+
+        case 2:
+        case 3: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            model.removeRow(row);
+
+            return "delete " + row;
+        }
+
+        case 4: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int count = 1 + random.nextInt(Math.min(rows - row,
+                            random.nextBoolean() ? 20 : 400));
+            model.getDataVector().subList(row, row + count).clear();
+            model.fireTableRowsDeleted(row, row + count - 1);
+
+            return "delete " + row + "+" + count;
+        }
+
+        case 5:
+        case 6: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            model.setValueAt(createValue(), row, 0);
+
+            return "update " + row;
+        }
+
+        case 7: {
+            if (rows == 0) {
+                return "none";
+            }
+
+            int row = random.nextInt(rows);
+            int last = Math.min(rows - 1, row + random.nextInt(30));
+            for (int i = row; i <= last; i++) {
+                ((Vector) model.getDataVector().get(i)).set(0, createValue());
+            }
+
+            model.fireTableRowsUpdated(row, last);
+
+            return "update " + row + "-" + last;
+        }
+
+        default: {
+            for (int i = 0; i < rows; i += 1 + random.nextInt(50)) {
+                ((Vector) model.getDataVector().get(i)).set(0, createValue());
+            }
+
+            model.fireTableDataChanged();
+
+            return "data changed";
+        }
+        }
+    }
+
+    static void runOnEdt(Runnable runnable) throws Throwable {
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /** Entry on a row of the model, recording whether its value is read. */
+    class Row extends RowFilter.Entry {
+        int row;
+        boolean read;
+
+        @Override public Object getModel() {
+            return model;
+        }
+
+        @Override public int getValueCount() {
+            return model.getColumnCount();
+        }
+
+        @Override public Object getValue(int index) {
+            read = true;
+
+            return model.getValueAt(row, index);
+        }
+
+        @Override public Object getIdentifier() {
+            return row;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.Format;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.RowFilter;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+import net.coderazzi.filters.IParser;
+import net.coderazzi.filters.gui.ParserModel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Verifies that parsers -and the filters they create- shared by several
+ * threads produce the same results as a sequential run.
+ */
+public class ParserConcurrencyTest {
+
+    private static final int ROWS = 3000;
+    private static final int THREADS = 8;
+    private static final int RUNS_PER_THREAD = 400;
+
+    /** HTML contents, handled by the string parser. */
+    private static final String HTML[] = {
+            "<html>a&amp;b</html>", "<html><b>abc</b> d&#233;f</html>", "a&b",
+            "<html>x&lt;y</html>"
+        };
+
+    /** Expressions for each column: string, decimal and date. */
+    private static final String EXPRESSIONS[][] = {
+            {
+                "s1*", "*\u00e9\\**", "a&b", "=a&b", "!x<y", "~*c d*", "S2",
+                "abc d", ">s3", "<=s1", "!s1ab"
+            },
+            { ">10", "<-3.5", "=20.5", "*5", "!-0.5", "1?.5", ">=79.5" },
+            {
+                ">2001/09/10", "<=2002/01/01", "=2001/12/25", "2001/1*",
+                "!2002/03/01"
+            }
+        };
+
+    private TableModel model;
+    private Parser parsers[];
+
+    @Before public void setUp() {
+        Random random = new Random(3);
+        final Object data[][] = new Object[ROWS][3];
+        for (int i = 0; i < ROWS; i++) {
+            data[i][0] = (random.nextInt(5) == 0)
+                ? HTML[random.nextInt(HTML.length)]
+                : ("s" + random.nextInt(50)
+                    + (random.nextBoolean() ? "\u00e9*" : "ab"));
+            data[i][1] = random.nextInt(100) - 20.5;
+            data[i][2] = new Date(1000000000000L
+                        + (random.nextInt(1000) * 86400000L / 3));
+        }
+
+        model = new AbstractTableModel() {
+                private static final long serialVersionUID = 1L;
+
+                @Override public int getRowCount() {
+                    return ROWS;
+                }
+
+                @Override public int getColumnCount() {
+                    return 3;
+                }
+
+                @Override public Object getValueAt(int row, int column) {
+                    return data[row][column];
+                }
+            };
+
+        Format dateFormat = new SimpleDateFormat("yyyy/MM/dd");
+        parsers = new Parser[] {
+                new Parser(null, null, Parser.IGNORE_CASE_STRING_COMPARATOR,
+                    true, 0),
+                new Parser(new ParserModel().getFormat(Double.class),
+                    Parser.NATURAL_COMPARATOR, Parser.STRING_COMPARATOR, false,
+                    1),
+                new Parser(dateFormat,
+                    DateComparator.getDateComparator(dateFormat),
+                    Parser.STRING_COMPARATOR, false, 2)
+            };
+        parsers[0].setIgnoreAccents(true);
+    }
+
+    @Test public void testSharedParsers() throws Exception {
+        // the reference results, from a sequential run
+        final Map<String, String> expected = new HashMap<String, String>();
+        for (int column = 0; column < EXPRESSIONS.length; column++) {
+            for (String expression : EXPRESSIONS[column]) {
+                expected.put(getKey(column, expression, false),
+                    evaluate(column, expression, false));
+                expected.put(getKey(column, expression, true),
+                    evaluate(column, expression, true));
+                parsers[column].clearCache();
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<String>>> futures =
+                new ArrayList<Future<List<String>>>();
+            for (int t = 0; t < THREADS; t++) {
+                final Random random = new Random(t);
+                futures.add(executor.submit(new Callable<List<String>>() {
+                            @Override public List<String> call()
+                                    throws Exception {
+                                return run(random, expected);
+                            }
+                        }));
+            }
+
+            for (Future<List<String>> future : futures) {
+                assertEquals(new ArrayList<String>(), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Evaluates random expressions, returning those whose results differ
+     * from the expected ones.
+     */
+    List<String> run(Random random, Map<String, String> expected)
+            throws Exception {
+        List<String> ret = new ArrayList<String>();
+        for (int i = 0; i < RUNS_PER_THREAD; i++) {
+            int column = random.nextInt(EXPRESSIONS.length);
+            String expressions[] = EXPRESSIONS[column];
+            String expression = expressions[random.nextInt(
+                        expressions.length)];
+            boolean instant = random.nextBoolean();
+            if (random.nextInt(50) == 0) {
+                parsers[column].clearCache();
+            }
+
+            String key = getKey(column, expression, instant);
+            if (!expected.get(key).equals(
+                        evaluate(column, expression, instant))) {
+                ret.add(key);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the rows included by the filter of the given expression, with
+     * the applied expression and the escaped form, if instant.
+     */
+    private String evaluate(int column, String expression, boolean instant)
+            throws Exception {
+        Parser parser = parsers[column];
+        RowFilter filter;
+        String ret = "";
+        if (instant) {
+            IParser.InstantFilter instantFilter = parser.parseInstantText(
+                    expression);
+            filter = instantFilter.filter;
+            ret = instantFilter.expression + "|" + parser.escape(expression)
+                + "|";
+        } else {
+            filter = parser.parseText(expression);
+        }
+
+        Row row = new Row(model);
+        BitSet included = new BitSet();
+        for (row.row = 0; row.row < ROWS; row.row++) {
+            if (filter.include(row)) {
+                included.set(row.row);
+            }
+        }
+
+        return ret + included;
+    }
+
+    private static String getKey(int     column,
+                                 String  expression,
+                                 boolean instant) {
+        return column + (instant ? " instant " : " ") + expression;
+    }
+
+    /** Entry on a row of the table model, identified by its index. */
+    static class Row extends RowFilter.Entry {
+        TableModel model;
+        int row;
+
+        Row(TableModel model) {
+            this.model = model;
+        }
+
+        @Override public Object getModel() {
+            return model;
+        }
+
+        @Override public int getValueCount() {
+            return model.getColumnCount();
+        }
+
+        @Override public Object getValue(int index) {
+            return model.getValueAt(row, index);
+        }
+
+        @Override public Object getIdentifier() {
+            return row;
+        }
+    }
+}
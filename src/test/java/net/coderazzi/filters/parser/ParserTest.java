@@ -0,0 +1,222 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import javax.swing.RowFilter;
+import javax.swing.table.DefaultTableModel;
+
+import net.coderazzi.filters.IParser.InstantFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/** Tests on the filters created by the {@link Parser}. */
+public class ParserTest {
+
+    private static final String VALUES[] = { "abc", "abd", null, "abc", "b" };
+    private static final String OPERATORS[] = { "", "=", "!", "~", "!~" };
+    private static final String OPERANDS[] = {
+            "abc", "ab*", "*b*", "b", "abd", "*c", "?b?"
+        };
+
+    private DefaultTableModel model;
+
+    @Before public void setUp() {
+        model = new DefaultTableModel(0, 1);
+        for (String value : VALUES) {
+            model.addRow(new Object[] { value });
+        }
+    }
+
+    /**
+     * The '!' operator on a column without typed comparator excludes the
+     * given string, and does not change the behaviour of later filters.
+     */
+    @Test public void testStringNotEquals() throws Exception {
+        Parser parser = new Parser(null, null, Parser.STRING_COMPARATOR, false,
+                0);
+        assertEquals("{1, 2, 4}", evaluate(parser.parseText("!abc")));
+        assertEquals("{0, 3}", evaluate(parser.parseText("=abc")));
+        assertEquals("{1, 2, 4}", evaluate(parser.parseText("!abc")));
+    }
+
+    /**
+     * Only literal expressions containing the base are narrowing, and their
+     * filters only include rows included by the instant filter of the base.
+     */
+    @Test public void testNarrowing() throws Exception {
+        Parser parser = createParser();
+        assertTrue(parser.isNarrowing("ab", "abc"));
+        assertTrue(parser.isNarrowing("b", "abd"));
+        assertTrue(parser.isNarrowing("ab", " ab "));
+        assertFalse(parser.isNarrowing("abc", "ab"));
+        assertFalse(parser.isNarrowing("ab", "bc"));
+        assertFalse(parser.isNarrowing("ab", "ab*"));
+        assertFalse(parser.isNarrowing("ab", "a?c"));
+        assertFalse(parser.isNarrowing("ab", "=abc"));
+        assertFalse(parser.isNarrowing("=ab", "abc"));
+        assertFalse(parser.isNarrowing("a*", "abc"));
+
+        String literals[] = { "", "a", "b", "ab", "bc", "abc", "abd" };
+        for (String base : literals) {
+            BitSet passing = included(parser.parseInstantText(base).filter);
+            for (String expression : literals) {
+                if (parser.isNarrowing(base, expression)) {
+                    BitSet rows = included(parser.parseText(expression));
+                    rows.or(included(
+                            parser.parseInstantText(expression).filter));
+                    rows.andNot(passing);
+                    assertTrue(base + " > " + expression, rows.isEmpty());
+                }
+            }
+        }
+    }
+
+    /**
+     * The filters of the last expressions are cached: a hit returns the same
+     * filter, and an evicted expression is parsed into an equivalent one.
+     */
+    @Test public void testExpressionsCache() throws Exception {
+        Parser parser = createParser();
+        String expressions[] = new String[Parser.ExpressionsCache.SIZE + 1];
+        RowFilter filters[] = new RowFilter[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            expressions[i] = OPERATORS[i % OPERATORS.length]
+                + OPERANDS[i / OPERATORS.length];
+        }
+
+        for (int i = 0; i < Parser.ExpressionsCache.SIZE; i++) {
+            filters[i] = parser.parseText(expressions[i]);
+            assertSame(expressions[i], filters[i],
+                parser.parseText(expressions[i]));
+        }
+
+        // the first expression is used again: the second is now the eldest
+        assertSame(filters[0], parser.parseText(expressions[0]));
+
+        int last = Parser.ExpressionsCache.SIZE;
+        filters[last] = parser.parseText(expressions[last]);
+        assertSame(filters[0], parser.parseText(expressions[0]));
+        assertSame(filters[last], parser.parseText(expressions[last]));
+        for (int i = 2; i < last; i++) {
+            assertSame(expressions[i], filters[i],
+                parser.parseText(expressions[i]));
+        }
+
+        RowFilter evicted = parser.parseText(expressions[1]);
+        assertNotSame(filters[1], evicted);
+        assertEquals(evaluate(filters[1]), evaluate(evicted));
+
+        parser.clearCache();
+        for (int i = 0; i <= last; i++) {
+            RowFilter filter = parser.parseText(expressions[i]);
+            assertNotSame(expressions[i], filters[i], filter);
+            assertEquals(expressions[i], evaluate(filters[i]),
+                evaluate(filter));
+        }
+    }
+
+    /**
+     * The instant filters are cached as well, but each call returns a copy,
+     * as {@link InstantFilter} instances are mutable.
+     */
+    @Test public void testInstantFiltersCache() throws Exception {
+        Parser parser = createParser();
+        for (String operand : OPERANDS) {
+            InstantFilter first = parser.parseInstantText(operand);
+            String expression = first.expression;
+            RowFilter filter = first.filter;
+            first.expression = null;
+            first.filter = null;
+
+            InstantFilter second = parser.parseInstantText(operand);
+            assertNotSame(first, second);
+            assertSame(operand, filter, second.filter);
+            assertEquals(operand, expression, second.expression);
+        }
+
+        String first = OPERANDS[0];
+        RowFilter cached = parser.parseInstantText(first).filter;
+        for (int i = 0; i < Parser.ExpressionsCache.SIZE; i++) {
+            parser.parseInstantText("x" + i);
+        }
+
+        InstantFilter evicted = parser.parseInstantText(first);
+        assertNotSame(cached, evicted.filter);
+        assertEquals(evaluate(cached), evaluate(evicted.filter));
+    }
+
+    private Parser createParser() {
+        return new Parser(null, null, Parser.STRING_COMPARATOR, false, 0);
+    }
+
+    /** Returns the rows included by the filter. */
+    private String evaluate(RowFilter filter) {
+        return included(filter).toString();
+    }
+
+    private BitSet included(RowFilter filter) {
+        Row row = new Row();
+        BitSet ret = new BitSet();
+        for (row.row = 0; row.row < model.getRowCount(); row.row++) {
+            if (filter.include(row)) {
+                ret.set(row.row);
+            }
+        }
+
+        return ret;
+    }
+
+    /** Entry on a row of the table model, identified by its index. */
+    class Row extends RowFilter.Entry {
+        int row;
+
+        @Override public Object getModel() {
+            return model;
+        }
+
+        @Override public int getValueCount() {
+            return model.getColumnCount();
+        }
+
+        @Override public Object getValue(int index) {
+            return model.getValueAt(row, index);
+        }
+
+        @Override public Object getIdentifier() {
+            return row;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import net.coderazzi.filters.gui.ParserModel;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the comparison operators resolved with the {@link RangeIndex}
+ * against the same operators evaluated row by row, on an integer column with
+ * null values and, on some sequences, values that cannot be compared.
+ */
+public class RangeIndexTest extends IndexTestSupport {
+
+    private static final String OPERATORS[] = { "<", "<=", ">", ">=", "<>" };
+
+    /** Probability (per thousand) of a value that cannot be compared. */
+    private int invalidValues;
+
+    @Test public void testRandomSequences() throws Throwable {
+        runSequences(15, 40);
+    }
+
+    @Override void startSequence() {
+        // on a sequence in three, the edits can set values not comparable
+        // to integers: the index fails to update, and must be discarded
+        invalidValues = (random.nextInt(3) == 0) ? 20 : 0;
+    }
+
+    @Override Parser createParser() {
+        return new Parser(new ParserModel.IntegerTypeFormat(),
+                Parser.NATURAL_COMPARATOR, Parser.STRING_COMPARATOR, false, 0);
+    }
+
+    @Override void enableIndex(Parser parser) {
+        parser.setRangeIndex(true);
+    }
+
+    @Override Object createValue() {
+        int n = random.nextInt(1000);
+        if (editing && (n < invalidValues)) {
+            return "x";
+        }
+
+        return (n < 100) ? null : Integer.valueOf(random.nextInt(50));
+    }
+
+    @Override String createExpression() {
+        return OPERATORS[random.nextInt(OPERATORS.length)]
+            + (random.nextInt(60) - 5);
+    }
+}
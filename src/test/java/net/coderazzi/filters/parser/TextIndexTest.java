@@ -0,0 +1,99 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.parser;
+
+import org.junit.Test;
+
+
+/**
+ * Verifies the wildcard expressions resolved with the {@link TextIndex}
+ * against the same expressions matched row by row, with and without
+ * ignoring case and accents.
+ */
+public class TextIndexTest extends IndexTestSupport {
+
+    private static final String CHARACTERS = "abcAB\u00e1";
+    private static final String OPERATORS[] = { "", "~", "!~" };
+
+    private boolean ignoreCase;
+    private boolean ignoreAccents;
+
+    @Test public void testRandomSequences() throws Throwable {
+        runSequences(15, 40);
+    }
+
+    @Override void startSequence() {
+        ignoreCase = random.nextBoolean();
+        ignoreAccents = random.nextBoolean();
+    }
+
+    @Override Parser createParser() {
+        Parser ret = new Parser(null, null,
+                ignoreCase ? Parser.IGNORE_CASE_STRING_COMPARATOR
+                           : Parser.STRING_COMPARATOR, ignoreCase, 0);
+        ret.setIgnoreAccents(ignoreAccents);
+
+        return ret;
+    }
+
+    @Override void enableIndex(Parser parser) {
+        parser.setTextIndex(true);
+    }
+
+    @Override Object createValue() {
+        return (random.nextInt(20) == 0) ? null : createString(8);
+    }
+
+    @Override String createExpression() {
+        StringBuilder ret = new StringBuilder(
+                OPERATORS[random.nextInt(OPERATORS.length)]);
+        if (random.nextBoolean()) {
+            ret.append('*');
+        }
+
+        for (int i = random.nextInt(3); i >= 0; i--) {
+            ret.append(createString(4));
+            if (i > 0) {
+                ret.append('*');
+            }
+        }
+
+        if (random.nextBoolean()) {
+            ret.append('*');
+        }
+
+        return ret.toString();
+    }
+
+    private String createString(int maxLength) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            ret.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+
+        return ret.toString();
+    }
+}